@@ -0,0 +1,116 @@
+package com.whl.codes.benchmark;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * @author whl
+ * @version V1.0
+ * @Title: 多线程吞吐量基准测试工具
+ * @Description: 仓库中没有构建文件, 无法引入JMH, 这里按JMH Throughput模式的思路实现一个最小的测试框架:
+ * 所有线程同时开始, 先预热再计时, 每个线程循环执行Operation并统计次数, 返回值累加到sink中防止被JIT消除。
+ * 每个线程通过Supplier创建自己的Operation, 方便测试线程私有的状态。
+ */
+public class ThroughputBenchmark {
+    private static final int WARMUP = 0;
+    private static final int MEASURE = 1;
+    private static final int STOP = 2;
+
+    private static volatile long blackhole;
+
+    public interface Operation {
+        long run();
+    }
+
+    private volatile int phase;
+
+    private ThroughputBenchmark() {
+    }
+
+    public static Result run(String name, int threads, Supplier<Operation> operations,
+                             long warmupMillis, long measureMillis) {
+        return new ThroughputBenchmark().execute(name, threads, operations, warmupMillis, measureMillis);
+    }
+
+    private Result execute(String name, int threads, Supplier<Operation> operations,
+                           long warmupMillis, long measureMillis) {
+        LongAdder totalOps = new LongAdder();
+        CountDownLatch ready = new CountDownLatch(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        phase = WARMUP;
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread(() -> {
+                Operation operation = operations.get();
+                long sink = 0;
+                long ops = 0;
+                ready.countDown();
+                try {
+                    start.await();
+                    while (phase == WARMUP) {
+                        sink += operation.run();
+                    }
+                    while (phase == MEASURE) {
+                        sink += operation.run();
+                        ops++;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    totalOps.add(ops);
+                    blackhole ^= sink;
+                    done.countDown();
+                }
+            }, "bench-" + name + "-" + i);
+            worker.setDaemon(true);
+            worker.start();
+        }
+        try {
+            ready.await();
+            start.countDown();
+            Thread.sleep(warmupMillis);
+            long begin = System.nanoTime();
+            phase = MEASURE;
+            Thread.sleep(measureMillis);
+            phase = STOP;
+            long elapsed = System.nanoTime() - begin;
+            done.await();
+            return new Result(name, threads, totalOps.sum(), elapsed);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Benchmark interrupted", e);
+        }
+    }
+
+    public static void printHeader() {
+        System.out.printf("%-28s %8s %16s %12s%n", "Benchmark", "Threads", "ops/s", "ns/op");
+    }
+
+    public static class Result {
+        private final String name;
+        private final int threads;
+        private final long ops;
+        private final long elapsedNanos;
+
+        public Result(String name, int threads, long ops, long elapsedNanos) {
+            this.name = name;
+            this.threads = threads;
+            this.ops = ops;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public double getOpsPerSecond() {
+            return ops * 1e9 / elapsedNanos;
+        }
+
+        //每个线程平均执行一次操作的耗时
+        public double getNanosPerOp() {
+            return ops == 0 ? Double.NaN : (double) elapsedNanos * threads / ops;
+        }
+
+        public void print() {
+            System.out.printf("%-28s %8d %16.0f %12.2f%n", name, threads, getOpsPerSecond(), getNanosPerOp());
+        }
+    }
+}
@@ -11,15 +11,59 @@ public class ResourcePoolConfig {
     private int maxTotal;
     private int maxIdle;
     private int minIdle;
+    private long timeBetweenEvictionRunsMillis;
+    private long minEvictableIdleTimeMillis;
+    private boolean testOnBorrow;
+    private int threadLocalCacheSize;
+    private long maxWaitMillis;
 
     private ResourcePoolConfig(Builder builder) {
         this.name = builder.name;
         this.maxTotal = builder.maxTotal;
         this.maxIdle = builder.maxIdle;
         this.minIdle = builder.minIdle;
+        this.timeBetweenEvictionRunsMillis = builder.timeBetweenEvictionRunsMillis;
+        this.minEvictableIdleTimeMillis = builder.minEvictableIdleTimeMillis;
+        this.testOnBorrow = builder.testOnBorrow;
+        this.threadLocalCacheSize = builder.threadLocalCacheSize;
+        this.maxWaitMillis = builder.maxWaitMillis;
     }
 
-    //...省略getter方法...
+    public String getName() {
+        return name;
+    }
+
+    public int getMaxTotal() {
+        return maxTotal;
+    }
+
+    public int getMaxIdle() {
+        return maxIdle;
+    }
+
+    public int getMinIdle() {
+        return minIdle;
+    }
+
+    public long getTimeBetweenEvictionRunsMillis() {
+        return timeBetweenEvictionRunsMillis;
+    }
+
+    public long getMinEvictableIdleTimeMillis() {
+        return minEvictableIdleTimeMillis;
+    }
+
+    public boolean isTestOnBorrow() {
+        return testOnBorrow;
+    }
+
+    public int getThreadLocalCacheSize() {
+        return threadLocalCacheSize;
+    }
+
+    public long getMaxWaitMillis() {
+        return maxWaitMillis;
+    }
 
     //我们将Builder类设计成了ResourcePoolConfig的内部类。
     //我们也可以将Builder类设计成独立的非内部类ResourcePoolConfigBuilder。
@@ -28,11 +72,19 @@ public class ResourcePoolConfig {
         private static final int DEFAULT_MAX_TOTAL = 8;
         private static final int DEFAULT_MAX_IDLE = 8;
         private static final int DEFAULT_MIN_IDLE = 0;
+        private static final long DEFAULT_TIME_BETWEEN_EVICTION_RUNS_MILLIS = 30_000;
+        private static final long DEFAULT_MIN_EVICTABLE_IDLE_TIME_MILLIS = 60_000;
+        private static final long DEFAULT_MAX_WAIT_MILLIS = -1;
 
         private String name;
         private int maxTotal = DEFAULT_MAX_TOTAL;
         private int maxIdle = DEFAULT_MAX_IDLE;
         private int minIdle = DEFAULT_MIN_IDLE;
+        private long timeBetweenEvictionRunsMillis = DEFAULT_TIME_BETWEEN_EVICTION_RUNS_MILLIS;
+        private long minEvictableIdleTimeMillis = DEFAULT_MIN_EVICTABLE_IDLE_TIME_MILLIS;
+        private boolean testOnBorrow;
+        private int threadLocalCacheSize;
+        private long maxWaitMillis = DEFAULT_MAX_WAIT_MILLIS;
 
         public ResourcePoolConfig build() {
             // 校验逻辑放到这里来做，包括必填项校验、依赖关系校验、约束条件校验等
@@ -79,6 +131,45 @@ public class ResourcePoolConfig {
             this.minIdle = minIdle;
             return this;
         }
+
+        //驱逐线程的运行间隔, 0表示不启动驱逐线程
+        public Builder setTimeBetweenEvictionRunsMillis(long timeBetweenEvictionRunsMillis) {
+            if (timeBetweenEvictionRunsMillis < 0) {
+                throw new IllegalArgumentException("...");
+            }
+            this.timeBetweenEvictionRunsMillis = timeBetweenEvictionRunsMillis;
+            return this;
+        }
+
+        //空闲超过这个时间的对象会被驱逐, 但空闲对象数不会低于minIdle
+        public Builder setMinEvictableIdleTimeMillis(long minEvictableIdleTimeMillis) {
+            if (minEvictableIdleTimeMillis <= 0) {
+                throw new IllegalArgumentException("...");
+            }
+            this.minEvictableIdleTimeMillis = minEvictableIdleTimeMillis;
+            return this;
+        }
+
+        //借出前是否调用PooledObjectFactory.validate()校验
+        public Builder setTestOnBorrow(boolean testOnBorrow) {
+            this.testOnBorrow = testOnBorrow;
+            return this;
+        }
+
+        //每个线程缓存的最近归还对象个数, 0表示不使用线程本地缓存; 虚拟线程始终不使用
+        public Builder setThreadLocalCacheSize(int threadLocalCacheSize) {
+            if (threadLocalCacheSize < 0) {
+                throw new IllegalArgumentException("...");
+            }
+            this.threadLocalCacheSize = threadLocalCacheSize;
+            return this;
+        }
+
+        //池耗尽时borrow()的最长等待时间, 负数表示一直等待
+        public Builder setMaxWaitMillis(long maxWaitMillis) {
+            this.maxWaitMillis = maxWaitMillis;
+            return this;
+        }
     }
 
     public static void main(String[] args) {
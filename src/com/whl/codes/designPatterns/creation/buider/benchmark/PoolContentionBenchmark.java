@@ -0,0 +1,65 @@
+package com.whl.codes.designPatterns.creation.buider.benchmark;
+
+import com.whl.codes.benchmark.ThroughputBenchmark;
+import com.whl.codes.designPatterns.creation.buider.ResourcePoolConfig;
+import com.whl.codes.designPatterns.creation.buider.pool.PooledObject;
+import com.whl.codes.designPatterns.creation.buider.pool.ResourcePool;
+import com.whl.codes.designPatterns.creation.buider.pool.StripedResourcePool;
+
+/**
+ * @author whl
+ * @version V1.0
+ * @Title: 对象池的竞争测试
+ * @Description: 分别在1、4、16、64、128个线程下测试 borrow() + close() 的吞吐量,
+ * 对比单个池、开启线程本地缓存的单个池与分段池。maxTotal取256, 保证池本身不会耗尽, 测到的是空闲结构上的竞争。
+ * 运行方式: java PoolContentionBenchmark [预热毫秒数] [测试毫秒数] [分段数]
+ */
+public class PoolContentionBenchmark {
+    private static final int[] THREADS = {1, 4, 16, 64, 128};
+    private static final int MAX_TOTAL = 256;
+
+    public static void main(String[] args) {
+        long warmupMillis = args.length > 0 ? Long.parseLong(args[0]) : 1000;
+        long measureMillis = args.length > 1 ? Long.parseLong(args[1]) : 2000;
+        int stripes = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+
+        ResourcePool<Object> single = new ResourcePool<>(config("single", 0), Object::new);
+        ResourcePool<Object> cached = new ResourcePool<>(config("cached", 4), Object::new);
+        StripedResourcePool<Object> striped = new StripedResourcePool<>(config("striped", 0), Object::new, stripes);
+
+        ThroughputBenchmark.printHeader();
+        for (int threads : THREADS) {
+            ThroughputBenchmark.run("ResourcePool", threads, () -> () -> {
+                PooledObject<Object> pooled = single.borrow();
+                pooled.close();
+                return 1;
+            }, warmupMillis, measureMillis).print();
+        }
+        for (int threads : THREADS) {
+            ThroughputBenchmark.run("ResourcePool(threadCache)", threads, () -> () -> {
+                PooledObject<Object> pooled = cached.borrow();
+                pooled.close();
+                return 1;
+            }, warmupMillis, measureMillis).print();
+        }
+        for (int threads : THREADS) {
+            ThroughputBenchmark.run("StripedResourcePool(" + stripes + ")", threads, () -> () -> {
+                PooledObject<Object> pooled = striped.borrow();
+                pooled.close();
+                return 1;
+            }, warmupMillis, measureMillis).print();
+        }
+        single.close();
+        cached.close();
+        striped.close();
+    }
+
+    private static ResourcePoolConfig config(String name, int threadLocalCacheSize) {
+        return new ResourcePoolConfig.Builder()
+                .setName(name)
+                .setMaxTotal(MAX_TOTAL)
+                .setMaxIdle(MAX_TOTAL)
+                .setThreadLocalCacheSize(threadLocalCacheSize)
+                .build();
+    }
+}
@@ -0,0 +1,177 @@
+package com.whl.codes.designPatterns.creation.buider.pool;
+
+import com.whl.codes.designPatterns.creation.buider.ResourcePoolConfig;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author whl
+ * @version V1.0
+ * @Title: 对象池大小的自适应控制器
+ * @Description: 每个周期比较PoolMetrics的增量与池的瞬时状态, 在[max(minIdle, 1), maxTotal]之间调整池的effectiveMaxTotal:
+ * 有等待者、有超时或等待的借出占比超过1%时认为在排队, 连续growAfterPeriods个周期排队就扩大25%;
+ * 没有排队且活跃对象不到上限的一半时认为资源过剩, 连续shrinkAfterPeriods个周期过剩才缩小10%,
+ * 并且不低于这段时间内活跃对象峰值的两倍。介于两者之间时计数清零, 扩容快、缩容慢, 避免上限来回抖动。
+ */
+public class AdaptivePoolSizer {
+    private static final double GROW_WAIT_RATIO = 0.01;
+    private static final double SHRINK_UTILIZATION = 0.5;
+
+    private final ResourcePool<?> pool;
+    private final long periodMillis;
+    private final int growAfterPeriods;
+    private final int shrinkAfterPeriods;
+    private final int lowerBound;
+    private final int upperBound;
+
+    //只在控制线程中访问
+    private long lastBorrowCount;
+    private long lastWaitCount;
+    private long lastTimeoutCount;
+    private int pressurePeriods;
+    private int slackPeriods;
+    private int peakActive;
+
+    private ScheduledExecutorService scheduler;
+
+    public AdaptivePoolSizer(ResourcePool<?> pool, long periodMillis) {
+        this(pool, periodMillis, 2, 10);
+    }
+
+    public AdaptivePoolSizer(ResourcePool<?> pool, long periodMillis, int growAfterPeriods, int shrinkAfterPeriods) {
+        if (periodMillis <= 0 || growAfterPeriods <= 0 || shrinkAfterPeriods <= 0) {
+            throw new IllegalArgumentException("Period and hysteresis must be positive");
+        }
+        this.pool = pool;
+        this.periodMillis = periodMillis;
+        this.growAfterPeriods = growAfterPeriods;
+        this.shrinkAfterPeriods = shrinkAfterPeriods;
+        ResourcePoolConfig config = pool.getConfig();
+        this.lowerBound = Math.max(1, config.getMinIdle());
+        this.upperBound = config.getMaxTotal();
+        PoolMetrics metrics = pool.getMetrics();
+        this.lastBorrowCount = metrics.getBorrowCount();
+        this.lastWaitCount = metrics.getWaitCount();
+        this.lastTimeoutCount = metrics.getTimeoutCount();
+    }
+
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "pool-sizer-" + pool.getConfig().getName());
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(this::adjust, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    void adjust() {
+        try {
+            PoolMetrics metrics = pool.getMetrics();
+            long borrowCount = metrics.getBorrowCount();
+            long waitCount = metrics.getWaitCount();
+            long timeoutCount = metrics.getTimeoutCount();
+            long borrows = borrowCount - lastBorrowCount;
+            long waits = waitCount - lastWaitCount;
+            long timeouts = timeoutCount - lastTimeoutCount;
+            lastBorrowCount = borrowCount;
+            lastWaitCount = waitCount;
+            lastTimeoutCount = timeoutCount;
+
+            int current = pool.getEffectiveMaxTotal();
+            int active = pool.getNumActive();
+            boolean pressure = pool.getNumWaiters() > 0 || timeouts > 0
+                    || (borrows > 0 && (double) waits / borrows > GROW_WAIT_RATIO);
+            boolean slack = !pressure && active < current * SHRINK_UTILIZATION;
+
+            if (pressure) {
+                slackPeriods = 0;
+                peakActive = 0;
+                if (++pressurePeriods >= growAfterPeriods) {
+                    pressurePeriods = 0;
+                    resize(current, Math.min(upperBound, current + Math.max(1, current / 4)));
+                }
+            } else if (slack) {
+                pressurePeriods = 0;
+                peakActive = Math.max(peakActive, active);
+                if (++slackPeriods >= shrinkAfterPeriods) {
+                    int floor = Math.max(lowerBound, (int) Math.ceil(peakActive / SHRINK_UTILIZATION));
+                    slackPeriods = 0;
+                    peakActive = 0;
+                    resize(current, Math.max(floor, current - Math.max(1, current / 10)));
+                }
+            } else {
+                //利用率处于中间区间, 不调整
+                pressurePeriods = 0;
+                slackPeriods = 0;
+                peakActive = 0;
+            }
+        } catch (RuntimeException e) {
+            //吞掉异常, 否则定时任务会被取消
+        }
+    }
+
+    private void resize(int current, int target) {
+        if (target != current) {
+            pool.setEffectiveMaxTotal(target);
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        ResourcePoolConfig config = new ResourcePoolConfig.Builder()
+                .setName("dbconnectionpool")
+                .setMaxTotal(32)
+                .setMaxIdle(32)
+                .setMinIdle(2)
+                .setTimeBetweenEvictionRunsMillis(100)
+                .build();
+        ResourcePool<Object> pool = new ResourcePool<>(config, Object::new);
+        //先从较小的上限开始, 由控制器根据排队情况扩容
+        pool.setEffectiveMaxTotal(4);
+        AdaptivePoolSizer sizer = new AdaptivePoolSizer(pool, 100, 2, 5);
+        sizer.start();
+
+        //高峰: 16个线程, 每次占用对象2毫秒
+        CountDownLatch done = new CountDownLatch(16);
+        for (int i = 0; i < 16; i++) {
+            new Thread(() -> {
+                try {
+                    long end = System.currentTimeMillis() + 2000;
+                    while (System.currentTimeMillis() < end) {
+                        PooledObject<Object> object = pool.borrow(1000);
+                        try {
+                            Thread.sleep(2);
+                        } finally {
+                            pool.returnObject(object);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        done.await();
+        System.out.println("after peak: " + pool);
+        System.out.println(pool.getMetrics());
+
+        //低谷: 没有请求, 上限逐步缩回
+        Thread.sleep(3000);
+        System.out.println("after idle: " + pool);
+        sizer.stop();
+        pool.close();
+    }
+}
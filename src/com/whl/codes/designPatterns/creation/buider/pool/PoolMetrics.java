@@ -0,0 +1,114 @@
+package com.whl.codes.designPatterns.creation.buider.pool;
+
+import com.whl.codes.metrics.LatencyHistogram;
+import com.whl.codes.metrics.LatencySnapshot;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author whl
+ * @version V1.0
+ * @Title: 对象池的累计指标
+ * @Description: 借出次数、等待次数与等待时间直方图、超时次数、创建耗时直方图、销毁次数, 均为启动以来的累计值。
+ * 不等待的借出只累加一个LongAdder, 直方图只在等待与创建这两条慢路径上记录, 不给快速路径引入共享热点。
+ * 直方图使用与接口耗时统计共用的LatencyHistogram, 单位为微秒。
+ * 活跃数、空闲数、等待者数等瞬时值由ResourcePool直接提供。
+ */
+public class PoolMetrics {
+    private final LongAdder borrowCount = new LongAdder();
+    private final LongAdder timeoutCount = new LongAdder();
+    private final LongAdder destroyCount = new LongAdder();
+
+    private final LongAdder waitCount = new LongAdder();
+    private final LongAdder waitSumMicros = new LongAdder();
+    private final LongAccumulator waitMaxMicros = new LongAccumulator(Math::max, 0);
+    private final LatencyHistogram waitHistogram = new LatencyHistogram();
+
+    private final LongAdder createCount = new LongAdder();
+    private final LongAdder createSumMicros = new LongAdder();
+    private final LongAccumulator createMaxMicros = new LongAccumulator(Math::max, 0);
+    private final LatencyHistogram createHistogram = new LatencyHistogram();
+
+    //没有等待就借到了对象
+    void recordBorrow() {
+        borrowCount.increment();
+    }
+
+    //在等待队列中等待了waitNanos后借到对象
+    void recordWait(long waitNanos) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(waitNanos);
+        borrowCount.increment();
+        waitCount.increment();
+        waitSumMicros.add(micros);
+        waitMaxMicros.accumulate(micros);
+        waitHistogram.record(micros, 1);
+    }
+
+    void recordTimeout() {
+        timeoutCount.increment();
+    }
+
+    void recordCreate(long createNanos) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(createNanos);
+        createCount.increment();
+        createSumMicros.add(micros);
+        createMaxMicros.accumulate(micros);
+        createHistogram.record(micros, 1);
+    }
+
+    void recordDestroy() {
+        destroyCount.increment();
+    }
+
+    public long getBorrowCount() {
+        return borrowCount.sum();
+    }
+
+    public long getWaitCount() {
+        return waitCount.sum();
+    }
+
+    public long getTimeoutCount() {
+        return timeoutCount.sum();
+    }
+
+    public long getCreateCount() {
+        return createCount.sum();
+    }
+
+    public long getDestroyCount() {
+        return destroyCount.sum();
+    }
+
+    //等待时间分布, 只包含发生了等待的借出
+    public LatencySnapshot getWaitSnapshot() {
+        LatencySnapshot snapshot = new LatencySnapshot();
+        snapshot.add(waitCount.sum(), waitSumMicros.sum(), waitMaxMicros.get(), waitHistogram);
+        return snapshot;
+    }
+
+    //factory.create()的耗时分布
+    public LatencySnapshot getCreateSnapshot() {
+        LatencySnapshot snapshot = new LatencySnapshot();
+        snapshot.add(createCount.sum(), createSumMicros.sum(), createMaxMicros.get(), createHistogram);
+        return snapshot;
+    }
+
+    @Override
+    public String toString() {
+        LatencySnapshot wait = getWaitSnapshot();
+        LatencySnapshot create = getCreateSnapshot();
+        return "PoolMetrics{borrows=" + getBorrowCount()
+                + ", waits=" + wait.getCount()
+                + ", waitP50=" + wait.getPercentile(50) + "us"
+                + ", waitP99=" + wait.getPercentile(99) + "us"
+                + ", waitMax=" + wait.getMax() + "us"
+                + ", timeouts=" + getTimeoutCount()
+                + ", creates=" + create.getCount()
+                + ", createP99=" + create.getPercentile(99) + "us"
+                + ", destroys=" + getDestroyCount()
+                + "}";
+    }
+}
@@ -0,0 +1,82 @@
+package com.whl.codes.designPatterns.creation.buider.pool;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * @author whl
+ * @version V1.0
+ * @Title: 池中对象的包装
+ * @Description: 借出与归还都以这个包装为单位, 状态用CAS切换, 借出线程、归还线程与驱逐线程之间不需要加锁。
+ * 实现了AutoCloseable, 可以用try-with-resources归还。
+ */
+public class PooledObject<T> implements AutoCloseable {
+    static final int IDLE = 0;
+    static final int ALLOCATED = 1;
+    static final int EVICTION = 2;
+    static final int INVALID = 3;
+    //归还线程已认领, 正在决定放回还是销毁
+    static final int RETURNING = 4;
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<PooledObject> STATE =
+            AtomicIntegerFieldUpdater.newUpdater(PooledObject.class, "state");
+
+    private final ResourcePool<T> pool;
+    private final T object;
+    private final long createTimeMillis = System.currentTimeMillis();
+    //线程本地缓存中保存的弱引用, 只在创建时分配一次, 归还时不产生新对象
+    final WeakReference<PooledObject<T>> weakReference = new WeakReference<>(this);
+    private volatile int state;
+    //最近一次归还的时间, System.nanoTime()
+    private volatile long lastReturnNanos = System.nanoTime();
+
+    PooledObject(ResourcePool<T> pool, T object, int state) {
+        this.pool = pool;
+        this.object = object;
+        this.state = state;
+    }
+
+    public T getObject() {
+        return object;
+    }
+
+    public long getCreateTimeMillis() {
+        return createTimeMillis;
+    }
+
+    ResourcePool<T> getPool() {
+        return pool;
+    }
+
+    int getState() {
+        return state;
+    }
+
+    void setState(int state) {
+        this.state = state;
+    }
+
+    boolean compareAndSetState(int expect, int update) {
+        return STATE.compareAndSet(this, expect, update);
+    }
+
+    long getLastReturnNanos() {
+        return lastReturnNanos;
+    }
+
+    void markReturned() {
+        lastReturnNanos = System.nanoTime();
+    }
+
+    //归还到池中
+    @Override
+    public void close() {
+        pool.returnObject(this);
+    }
+
+    @Override
+    public String toString() {
+        return "PooledObject{" + object + "}";
+    }
+}
@@ -0,0 +1,19 @@
+package com.whl.codes.designPatterns.creation.buider.pool;
+
+/**
+ * @author whl
+ * @version V1.0
+ * @Title: 池化对象工厂
+ * @Description: 负责池中对象的创建、校验与销毁, 由ResourcePool在需要时回调。
+ */
+public interface PooledObjectFactory<T> {
+    T create();
+
+    //借出前校验对象是否可用, 只在testOnBorrow开启时调用
+    default boolean validate(T object) {
+        return true;
+    }
+
+    default void destroy(T object) {
+    }
+}
@@ -0,0 +1,807 @@
+package com.whl.codes.designPatterns.creation.buider.pool;
+
+import com.whl.codes.designPatterns.creation.buider.ResourcePoolConfig;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author whl
+ * @version V1.0
+ * @Title: 由ResourcePoolConfig驱动的通用对象池
+ * @Description: 空闲对象放在ConcurrentLinkedDeque中, 头部是最近归还的对象(LIFO, 保持热对象被复用), 尾部是最久未用的对象。
+ * 借出时从头部poll并把状态CAS为ALLOCATED, 归还时CAS回IDLE再放回头部, 有空闲对象时整个过程没有锁。
+ * 对象总数用AtomicLong做CAS预占, 不超过maxTotal; 归还时用CAS预占空闲名额, 空闲数已达maxIdle的对象直接销毁。
+ * 池耗尽时借出请求以CompletableFuture的形式进入FIFO等待队列, 归还的对象直接交给最早的等待者, 不经过空闲队列;
+ * 销毁对象空出名额时也会为最早的等待者创建新对象。整个池没有synchronized与自旋, 阻塞的borrow()只是等待future完成,
+ * 虚拟线程等待时不会钉住载体线程。
+ * 对象总数的上限是effectiveMaxTotal, 初始等于maxTotal, 可以由AdaptivePoolSizer在[max(minIdle, 1), maxTotal]之间调整,
+ * 调小后多出的对象在归还或驱逐时销毁。借出、等待、创建等指标记录在PoolMetrics中。
+ * 驱逐线程定期扫描所有对象, 销毁空闲超过minEvictableIdleTimeMillis或超出maxIdle的对象, 然后把空闲对象补足到minIdle。
+ * <p>
+ * 配置了threadLocalCacheSize时, 每个线程还会缓存自己最近归还的对象(类似HikariCP的ConcurrentBag):
+ * 归还时放进本线程的缓存, 借出时先从缓存里取, 只对对象自身的状态做一次无竞争的CAS, 不碰共享队列。
+ * 缓存中的对象仍然是IDLE状态, 共享队列为空时其他线程会扫描全部对象把它"偷"走, 原线程下次取到时CAS失败直接丢弃。
+ * 缓存保存的是弱引用, 线程本地变量不会让已销毁的对象或已关闭的池无法回收; 虚拟线程数量可能非常多, 不使用缓存。
+ */
+public class ResourcePool<T> implements AutoCloseable {
+    private static final MethodHandle IS_VIRTUAL = findIsVirtual();
+
+    private final ResourcePoolConfig config;
+    private final PooledObjectFactory<T> factory;
+
+    //池中的全部对象, 只在创建与销毁时修改, 用于偷取与驱逐时的扫描
+    private final CopyOnWriteArrayList<PooledObject<T>> allObjects = new CopyOnWriteArrayList<>();
+    //共享的空闲对象队列, 其中可能残留已被线程本地缓存或偷取拿走的对象, 取出时CAS失败即丢弃
+    private final ConcurrentLinkedDeque<PooledObject<T>> idleObjects = new ConcurrentLinkedDeque<>();
+    //低32位是本池的对象数; 作为StripedResourcePool的一段时, 高32位是从SharedState租来的名额, 对象数不超过它
+    private final AtomicLong capacity = new AtomicLong();
+    //当前生效的对象总数上限, 不超过config.getMaxTotal()
+    private volatile int effectiveMaxTotal;
+    private final PoolMetrics metrics = new PoolMetrics();
+    //idleObjects中的元素个数, 避免调用O(n)的size()
+    private final AtomicInteger sharedIdleCount = new AtomicInteger();
+    //未开启线程本地缓存时为null
+    private final ThreadLocal<ThreadCache<T>> threadCache;
+
+    //分段池的各段共用同一份
+    private final SharedState<T> shared;
+    //池耗尽时的等待者, 先来先得, 来自SharedState
+    private final ConcurrentLinkedQueue<CompletableFuture<PooledObject<T>>> waiters;
+
+    private final ScheduledExecutorService evictor;
+    private volatile boolean closed;
+
+    public ResourcePool(ResourcePoolConfig config, PooledObjectFactory<T> factory) {
+        this(config, factory, new SharedState<>());
+    }
+
+    //StripedResourcePool的各段传入同一个SharedState
+    ResourcePool(ResourcePoolConfig config, PooledObjectFactory<T> factory, SharedState<T> shared) {
+        this.config = config;
+        this.factory = factory;
+        this.shared = shared;
+        this.waiters = shared.waiters;
+        if (shared.leasing) {
+            shared.members.add(this);
+        }
+        this.effectiveMaxTotal = config.getMaxTotal();
+        int cacheSize = config.getThreadLocalCacheSize();
+        this.threadCache = cacheSize > 0 ? ThreadLocal.withInitial(() -> new ThreadCache<>(cacheSize)) : null;
+        //预热: 启动时就创建minIdle个对象
+        ensureMinIdle();
+        long period = config.getTimeBetweenEvictionRunsMillis();
+        if (period > 0) {
+            evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "pool-evictor-" + config.getName());
+                thread.setDaemon(true);
+                return thread;
+            });
+            evictor.scheduleWithFixedDelay(this::evict, period, period, TimeUnit.MILLISECONDS);
+        } else {
+            evictor = null;
+        }
+    }
+
+    /**
+     * 借出对象, 池耗尽时最多等待maxWaitMillis毫秒
+     * @return
+     */
+    public PooledObject<T> borrow() {
+        return borrow(config.getMaxWaitMillis());
+    }
+
+    /**
+     * 借出对象, 池耗尽时最多等待timeoutMillis毫秒
+     * @param timeoutMillis 负数表示一直等待
+     * @return
+     */
+    public PooledObject<T> borrow(long timeoutMillis) {
+        return await(borrowAsync(timeoutMillis));
+    }
+
+    //阻塞等待borrowAsync()返回的future
+    PooledObject<T> await(CompletableFuture<PooledObject<T>> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            //取消失败说明对象已经交给了我们, 需要还回去
+            if (!future.cancel(false)) {
+                future.thenAccept(PooledObject::close);
+            }
+            throw new IllegalStateException("Interrupted while waiting for pool " + config.getName(), e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof TimeoutException) {
+                throw new IllegalStateException("Pool exhausted: " + config.getName(), cause);
+            }
+            throw new IllegalStateException(cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * 异步借出: 有可用对象时返回已完成的future, 否则进入FIFO等待队列, 由归还线程直接把对象交给最早的等待者
+     * @param timeoutMillis 负数表示一直等待, 超时后future以TimeoutException异常完成
+     * @return
+     */
+    public CompletableFuture<PooledObject<T>> borrowAsync(long timeoutMillis) {
+        PooledObject<T> pooled;
+        try {
+            pooled = waiters.isEmpty() ? tryBorrow() : null;
+        } catch (RuntimeException e) {
+            CompletableFuture<PooledObject<T>> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+        if (pooled != null) {
+            return CompletableFuture.completedFuture(pooled);
+        }
+        CompletableFuture<PooledObject<T>> waiter = new CompletableFuture<>();
+        long waitStart = System.nanoTime();
+        waiters.offer(waiter);
+        waiter.whenComplete((result, error) -> {
+            if (error == null) {
+                metrics.recordWait(System.nanoTime() - waitStart);
+                return;
+            }
+            //超时或被调用方取消时离开队列
+            waiters.remove(waiter);
+            if (error instanceof TimeoutException) {
+                metrics.recordTimeout();
+            }
+        });
+        if (timeoutMillis >= 0) {
+            //future完成时会取消超时任务
+            waiter.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        //入队之后再检查一次: 入队前归还或空出名额的线程可能没有看到这个等待者
+        notifyWaiters();
+        return waiter;
+    }
+
+    /**
+     * 不等待的借出, 依次尝试: 本线程缓存 -> 共享队列 -> 偷取其他线程缓存的对象 -> 在maxTotal以内创建新对象
+     * @return 池耗尽时返回null
+     */
+    public PooledObject<T> tryBorrow() {
+        PooledObject<T> pooled = tryBorrowIdle();
+        return pooled != null ? pooled : tryCreate();
+    }
+
+    //只借出已有的空闲对象, 不创建; StripedResourcePool先在所有段中找空闲对象, 都没有时才创建
+    PooledObject<T> tryBorrowIdle() {
+        ensureOpen();
+        for (;;) {
+            PooledObject<T> pooled = pollCached();
+            if (pooled == null) {
+                pooled = pollIdle();
+            }
+            if (pooled == null) {
+                pooled = steal();
+            }
+            if (pooled == null) {
+                return null;
+            }
+            if (!config.isTestOnBorrow() || factory.validate(pooled.getObject())) {
+                metrics.recordBorrow();
+                return pooled;
+            }
+            destroy(pooled);
+        }
+    }
+
+    //在名额内创建新对象借出, 没有名额时返回null
+    PooledObject<T> tryCreate() {
+        ensureOpen();
+        PooledObject<T> pooled = create(PooledObject.ALLOCATED);
+        if (pooled != null) {
+            metrics.recordBorrow();
+        }
+        return pooled;
+    }
+
+    /**
+     * 归还对象, 也可以直接调用PooledObject.close()
+     * @param pooled
+     */
+    public void returnObject(PooledObject<T> pooled) {
+        if (pooled.getPool() != this) {
+            throw new IllegalArgumentException("Object does not belong to pool " + config.getName());
+        }
+        if (!pooled.compareAndSetState(PooledObject.ALLOCATED, PooledObject.RETURNING)) {
+            throw new IllegalStateException("Object is not borrowed: " + pooled);
+        }
+        if (closed) {
+            destroy(pooled);
+            return;
+        }
+        pooled.markReturned();
+        //有等待者时直接交给最早的等待者
+        if (!waiters.isEmpty() && handOff(pooled)) {
+            return;
+        }
+        release(pooled, true);
+    }
+
+    /**
+     * 对象已损坏时调用, 直接销毁而不放回池中
+     * @param pooled
+     */
+    public void invalidate(PooledObject<T> pooled) {
+        if (pooled.getPool() != this || !pooled.compareAndSetState(PooledObject.ALLOCATED, PooledObject.INVALID)) {
+            throw new IllegalStateException("Object is not borrowed: " + pooled);
+        }
+        destroy(pooled);
+    }
+
+    //扫描全部对象统计, 用于监控与驱逐, 不在借出归还的快速路径上
+    public int getNumIdle() {
+        return countState(PooledObject.IDLE);
+    }
+
+    public int getNumActive() {
+        return countState(PooledObject.ALLOCATED);
+    }
+
+    public int getNumTotal() {
+        return countOf(capacity.get());
+    }
+
+    public int getNumWaiters() {
+        return waiters.size();
+    }
+
+    public int getEffectiveMaxTotal() {
+        return effectiveMaxTotal;
+    }
+
+    /**
+     * 调整对象总数上限, 调小时不会立即销毁借出中的对象, 而是在它们归还或空闲对象被驱逐时逐步收缩
+     * @param effectiveMaxTotal 1 ~ maxTotal
+     */
+    public void setEffectiveMaxTotal(int effectiveMaxTotal) {
+        if (effectiveMaxTotal <= 0 || effectiveMaxTotal > config.getMaxTotal()) {
+            throw new IllegalArgumentException("effectiveMaxTotal must be in [1, " + config.getMaxTotal() + "]: "
+                    + effectiveMaxTotal);
+        }
+        this.effectiveMaxTotal = effectiveMaxTotal;
+        //上限调大后等待者可以创建新对象
+        notifyWaiters();
+    }
+
+    public PoolMetrics getMetrics() {
+        return metrics;
+    }
+
+    public ResourcePoolConfig getConfig() {
+        return config;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        if (evictor != null) {
+            evictor.shutdownNow();
+        }
+        PooledObject<T> pooled;
+        while ((pooled = pollIdle()) != null) {
+            destroy(pooled);
+        }
+        //线程缓存中的空闲对象
+        for (PooledObject<T> cached : allObjects) {
+            if (cached.compareAndSetState(PooledObject.IDLE, PooledObject.EVICTION)) {
+                destroy(cached);
+            }
+        }
+        failWaiters();
+    }
+
+    private void failWaiters() {
+        CompletableFuture<PooledObject<T>> waiter;
+        while ((waiter = waiters.poll()) != null) {
+            waiter.completeExceptionally(new IllegalStateException("Pool is closed: " + config.getName()));
+        }
+    }
+
+    //pooled处于RETURNING状态, 放回线程缓存或共享队列, 超出maxIdle时销毁
+    private void release(PooledObject<T> pooled, boolean allowCache) {
+        //上限被调小, 多出的对象在归还时销毁
+        if (getNumTotal() > effectiveMaxTotal) {
+            destroy(pooled);
+            return;
+        }
+        if (allowCache && threadCache != null && !isVirtual(Thread.currentThread())) {
+            pooled.setState(PooledObject.IDLE);
+            if (threadCache.get().offer(pooled)) {
+                //设置IDLE之后才检查等待者, 与borrowAsync中"先入队再检查"配合不会丢失唤醒
+                notifyWaiters();
+                return;
+            }
+            if (!pooled.compareAndSetState(PooledObject.IDLE, PooledObject.RETURNING)) {
+                //已经被其他线程偷走
+                return;
+            }
+        }
+        if (!reserveIdle()) {
+            destroy(pooled);
+            return;
+        }
+        pooled.setState(PooledObject.IDLE);
+        idleObjects.offerFirst(pooled);
+        notifyWaiters();
+    }
+
+    //把RETURNING状态的对象交给最早的未完成等待者, 没有等待者时返回false, 对象仍是RETURNING状态
+    private boolean handOff(PooledObject<T> pooled) {
+        CompletableFuture<PooledObject<T>> waiter;
+        while ((waiter = waiters.poll()) != null) {
+            pooled.setState(PooledObject.ALLOCATED);
+            //已超时或已取消的等待者complete失败, 继续找下一个
+            if (waiter.complete(pooled)) {
+                return true;
+            }
+        }
+        pooled.setState(PooledObject.RETURNING);
+        return false;
+    }
+
+    //CAS预占共享队列中的一个空闲位置, 并发归还时空闲数也不会超过maxIdle
+    private boolean reserveIdle() {
+        for (;;) {
+            int idle = sharedIdleCount.get();
+            if (idle >= config.getMaxIdle()) {
+                return false;
+            }
+            if (sharedIdleCount.compareAndSet(idle, idle + 1)) {
+                return true;
+            }
+        }
+    }
+
+    //有等待者时, 取出空闲对象或在名额内创建新对象交给它们
+    void notifyWaiters() {
+        while (!waiters.isEmpty()) {
+            if (closed) {
+                failWaiters();
+                return;
+            }
+            PooledObject<T> pooled = pollIdle();
+            if (pooled == null) {
+                pooled = steal();
+            }
+            if (pooled == null) {
+                try {
+                    pooled = create(PooledObject.ALLOCATED);
+                } catch (RuntimeException e) {
+                    //创建失败时让最早的等待者失败, 而不是等到超时
+                    CompletableFuture<PooledObject<T>> waiter = waiters.poll();
+                    if (waiter != null) {
+                        waiter.completeExceptionally(e);
+                    }
+                    return;
+                }
+            }
+            if (pooled == null) {
+                //没有可用对象, 之后的归还或销毁会再次通知
+                return;
+            }
+            pooled.setState(PooledObject.RETURNING);
+            if (!handOff(pooled)) {
+                release(pooled, false);
+                return;
+            }
+        }
+    }
+
+    private PooledObject<T> pollCached() {
+        if (threadCache == null || isVirtual(Thread.currentThread())) {
+            return null;
+        }
+        return threadCache.get().poll();
+    }
+
+    private PooledObject<T> pollIdle() {
+        PooledObject<T> pooled;
+        while ((pooled = idleObjects.pollFirst()) != null) {
+            sharedIdleCount.decrementAndGet();
+            if (pooled.compareAndSetState(PooledObject.IDLE, PooledObject.ALLOCATED)) {
+                return pooled;
+            }
+            //CAS失败说明对象已被其他路径拿走或正在被驱逐, 这只是一个残留的引用
+        }
+        return null;
+    }
+
+    //共享队列为空时, 扫描全部对象, 拿走其他线程缓存中的空闲对象
+    private PooledObject<T> steal() {
+        if (threadCache == null) {
+            return null;
+        }
+        for (PooledObject<T> pooled : allObjects) {
+            if (pooled.getState() == PooledObject.IDLE
+                    && pooled.compareAndSetState(PooledObject.IDLE, PooledObject.ALLOCATED)) {
+                return pooled;
+            }
+        }
+        return null;
+    }
+
+    private int countState(int state) {
+        int count = 0;
+        for (PooledObject<T> pooled : allObjects) {
+            if (pooled.getState() == state) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    //先CAS预占一个名额再创建, 超过maxTotal时返回null
+    private PooledObject<T> create(int state) {
+        if (!reserve()) {
+            return null;
+        }
+        try {
+            long start = System.nanoTime();
+            PooledObject<T> pooled = new PooledObject<>(this, factory.create(), state);
+            metrics.recordCreate(System.nanoTime() - start);
+            allObjects.add(pooled);
+            return pooled;
+        } catch (RuntimeException e) {
+            unreserve();
+            throw e;
+        }
+    }
+
+    //单独使用时对象数不超过effectiveMaxTotal; 作为一段时不超过本段租到的名额, 名额用完时向SharedState再租一批
+    private boolean reserve() {
+        for (;;) {
+            long current = capacity.get();
+            int count = countOf(current);
+            int leased = leasedOf(current);
+            if (count < (shared.leasing ? leased : effectiveMaxTotal)) {
+                if (capacity.compareAndSet(current, capacityOf(leased, count + 1))) {
+                    return true;
+                }
+            } else if (!shared.leasing || !lease()) {
+                return false;
+            }
+        }
+    }
+
+    private boolean lease() {
+        int granted = shared.acquire();
+        if (granted == 0) {
+            return false;
+        }
+        capacity.addAndGet((long) granted << 32);
+        return true;
+    }
+
+    //对象数减一; 作为一段时只保留一批空闲名额, 多余的还给SharedState
+    private void unreserve() {
+        capacity.decrementAndGet();
+        if (shared.leasing) {
+            returnUnused(shared.batchSize);
+        }
+    }
+
+    //把超过keep个的未用名额还给SharedState
+    void returnUnused(int keep) {
+        for (;;) {
+            long current = capacity.get();
+            int count = countOf(current);
+            int leased = leasedOf(current);
+            int spare = leased - count - keep;
+            if (spare <= 0) {
+                return;
+            }
+            if (capacity.compareAndSet(current, capacityOf(leased - spare, count))) {
+                shared.release(spare);
+                return;
+            }
+        }
+    }
+
+    private static int countOf(long capacity) {
+        return (int) capacity;
+    }
+
+    private static int leasedOf(long capacity) {
+        return (int) (capacity >>> 32);
+    }
+
+    private static long capacityOf(int leased, int count) {
+        return ((long) leased << 32) | (count & 0xFFFFFFFFL);
+    }
+
+    private void destroy(PooledObject<T> pooled) {
+        pooled.setState(PooledObject.INVALID);
+        allObjects.remove(pooled);
+        unreserve();
+        metrics.recordDestroy();
+        try {
+            factory.destroy(pooled.getObject());
+        } catch (RuntimeException e) {
+            //销毁失败不影响池的状态
+        } finally {
+            //释放了一个名额, 等待者可以创建新对象
+            notifyWaiters();
+        }
+    }
+
+    //执行一次驱逐; StripedResourcePool关闭了各段自己的驱逐线程, 由一个线程统一调用
+    void evict() {
+        try {
+            long now = System.nanoTime();
+            long minEvictableIdleNanos = TimeUnit.MILLISECONDS.toNanos(config.getMinEvictableIdleTimeMillis());
+            //线程缓存中的对象也是空闲对象, 所以扫描全部对象而不只是共享队列
+            int idle = countState(PooledObject.IDLE);
+            for (PooledObject<T> pooled : allObjects) {
+                if (idle <= config.getMinIdle()) {
+                    break;
+                }
+                if (pooled.getState() != PooledObject.IDLE) {
+                    continue;
+                }
+                //空闲太久, 或者线程缓存使空闲对象超出了maxIdle, 或者上限被调小
+                boolean expired = now - pooled.getLastReturnNanos() >= minEvictableIdleNanos;
+                if ((expired || idle > config.getMaxIdle() || getNumTotal() > effectiveMaxTotal)
+                        && pooled.compareAndSetState(PooledObject.IDLE, PooledObject.EVICTION)) {
+                    idle--;
+                    if (idleObjects.removeFirstOccurrence(pooled)) {
+                        sharedIdleCount.decrementAndGet();
+                    }
+                    destroy(pooled);
+                }
+            }
+            ensureMinIdle();
+        } catch (RuntimeException e) {
+            //吞掉异常, 否则定时任务会被取消
+        }
+    }
+
+    private void ensureMinIdle() {
+        int idle = countState(PooledObject.IDLE);
+        while (!closed && idle < config.getMinIdle()) {
+            PooledObject<T> pooled = create(PooledObject.IDLE);
+            if (pooled == null) {
+                return;
+            }
+            idle++;
+            sharedIdleCount.incrementAndGet();
+            idleObjects.offerLast(pooled);
+            notifyWaiters();
+        }
+    }
+
+    private static boolean isVirtual(Thread thread) {
+        if (IS_VIRTUAL == null) {
+            return false;
+        }
+        try {
+            return (boolean) IS_VIRTUAL.invokeExact(thread);
+        } catch (Throwable e) {
+            return false;
+        }
+    }
+
+    //Thread.isVirtual()从JDK 21开始才有, 通过反射查找以兼容旧版本
+    private static MethodHandle findIsVirtual() {
+        try {
+            return MethodHandles.publicLookup().findVirtual(Thread.class, "isVirtual", MethodType.methodType(boolean.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 多个池共用的状态: FIFO等待队列, 以及分段时按批出租的maxTotal名额。单独使用的池各有一份, 不出租名额;
+     * StripedResourcePool的各段共用一份, 归还到任何一段的对象都能交给最早的等待者。
+     * 各段只在本段租到的名额用完时才访问名额计数, 借出与归还的快速路径上没有全局的写操作;
+     * 名额都已租出时从其他段收回未用的名额, 因此只要全局还有名额, 任何一段都能创建对象。
+     */
+    static final class SharedState<T> {
+        private final ConcurrentLinkedQueue<CompletableFuture<PooledObject<T>>> waiters = new ConcurrentLinkedQueue<>();
+        private final boolean leasing;
+        private final int batchSize;
+        //尚未租出的名额
+        private final AtomicInteger available;
+        private final List<ResourcePool<T>> members = new CopyOnWriteArrayList<>();
+
+        SharedState() {
+            this.leasing = false;
+            this.batchSize = 0;
+            this.available = null;
+        }
+
+        SharedState(int maxTotal, int batchSize) {
+            this.leasing = true;
+            this.batchSize = batchSize;
+            this.available = new AtomicInteger(maxTotal);
+        }
+
+        //租一批名额, 都已租出时先收回各段未用的名额再租
+        private int acquire() {
+            int granted = take();
+            if (granted == 0) {
+                for (ResourcePool<T> member : members) {
+                    member.returnUnused(0);
+                }
+                granted = take();
+            }
+            return granted;
+        }
+
+        private int take() {
+            for (;;) {
+                int current = available.get();
+                if (current == 0) {
+                    return 0;
+                }
+                int granted = Math.min(current, batchSize);
+                if (available.compareAndSet(current, current - granted)) {
+                    return granted;
+                }
+            }
+        }
+
+        private void release(int count) {
+            available.addAndGet(count);
+        }
+
+        boolean hasWaiters() {
+            return !waiters.isEmpty();
+        }
+
+        int getNumWaiters() {
+            return waiters.size();
+        }
+    }
+
+    /**
+     * 线程本地缓存: 最近归还的对象的弱引用组成的栈, 只被所属线程访问, 不需要同步。
+     * 必须是静态类, 否则会通过外部类引用把池本身挂在线程上。
+     */
+    private static final class ThreadCache<T> {
+        private final WeakReference<PooledObject<T>>[] entries;
+        private int size;
+
+        ThreadCache(int capacity) {
+            this.entries = newEntries(capacity);
+        }
+
+        //不能直接创建泛型数组
+        @SuppressWarnings({"rawtypes", "unchecked"})
+        private static <T> WeakReference<PooledObject<T>>[] newEntries(int capacity) {
+            return new WeakReference[capacity];
+        }
+
+        PooledObject<T> poll() {
+            while (size > 0) {
+                WeakReference<PooledObject<T>> reference = entries[--size];
+                entries[size] = null;
+                PooledObject<T> pooled = reference.get();
+                //被偷走或已销毁的对象CAS失败, 直接丢弃
+                if (pooled != null && pooled.compareAndSetState(PooledObject.IDLE, PooledObject.ALLOCATED)) {
+                    return pooled;
+                }
+            }
+            return null;
+        }
+
+        boolean offer(PooledObject<T> pooled) {
+            if (size == entries.length) {
+                compact();
+                if (size == entries.length) {
+                    return false;
+                }
+            }
+            entries[size++] = pooled.weakReference;
+            return true;
+        }
+
+        //清理已经不在本线程手中的残留引用
+        private void compact() {
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                PooledObject<T> pooled = entries[i].get();
+                if (pooled != null && pooled.getState() == PooledObject.IDLE) {
+                    entries[kept++] = entries[i];
+                }
+            }
+            for (int i = kept; i < size; i++) {
+                entries[i] = null;
+            }
+            size = kept;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ResourcePool{name=" + config.getName()
+                + ", total=" + getNumTotal()
+                + ", active=" + getNumActive()
+                + ", idle=" + getNumIdle()
+                + ", waiters=" + getNumWaiters()
+                + ", effectiveMaxTotal=" + effectiveMaxTotal
+                + "}";
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("Pool is closed: " + config.getName());
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        ResourcePoolConfig config = new ResourcePoolConfig.Builder()
+                .setName("dbconnectionpool")
+                .setMaxTotal(4)
+                .setMaxIdle(4)
+                .setMinIdle(2)
+                .setTimeBetweenEvictionRunsMillis(200)
+                .setMinEvictableIdleTimeMillis(500)
+                .setThreadLocalCacheSize(2)
+                .build();
+        AtomicInteger sequence = new AtomicInteger();
+        ResourcePool<String> pool = new ResourcePool<>(config, () -> "connection-" + sequence.incrementAndGet());
+        System.out.println("prewarmed idle: " + pool.getNumIdle());
+
+        //8个线程争用4个对象
+        CountDownLatch done = new CountDownLatch(8);
+        for (int i = 0; i < 8; i++) {
+            new Thread(() -> {
+                for (int j = 0; j < 1000; j++) {
+                    try (PooledObject<String> connection = pool.borrow(1000)) {
+                        connection.getObject().length();
+                    }
+                }
+                done.countDown();
+            }).start();
+        }
+        done.await();
+        System.out.println("created: " + sequence.get() + ", total: " + pool.getNumTotal() + ", idle: " + pool.getNumIdle());
+
+        //池耗尽时异步借出, 归还的对象直接交给等待者
+        List<PooledObject<String>> borrowed = new ArrayList<>();
+        for (int i = 0; i < config.getMaxTotal(); i++) {
+            borrowed.add(pool.borrow());
+        }
+        CompletableFuture<PooledObject<String>> future = pool.borrowAsync(1000);
+        System.out.println("waiting: " + !future.isDone());
+        borrowed.get(0).close();
+        System.out.println("handed off: " + future.join());
+        future.join().close();
+        for (int i = 1; i < borrowed.size(); i++) {
+            borrowed.get(i).close();
+        }
+
+        //空闲对象被驱逐, 但保留minIdle个
+        Thread.sleep(1000);
+        System.out.println("after eviction, total: " + pool.getNumTotal() + ", idle: " + pool.getNumIdle());
+        System.out.println(pool);
+        System.out.println(pool.getMetrics());
+        pool.close();
+    }
+}
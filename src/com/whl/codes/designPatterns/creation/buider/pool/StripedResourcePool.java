@@ -0,0 +1,216 @@
+package com.whl.codes.designPatterns.creation.buider.pool;
+
+import com.whl.codes.designPatterns.creation.buider.ResourcePoolConfig;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author whl
+ * @version V1.0
+ * @Title: 分段对象池
+ * @Description: 核数很多时, 即使无锁, 所有线程都在同一个空闲队列头部CAS也会让这条缓存行成为热点。
+ * 这里把池拆成N个ResourcePool, 每段有自己的空闲队列、空闲计数与线程缓存, maxIdle、minIdle按段均分(余数分给前面的段)。
+ * maxTotal不均分: 各段按批从共用的ResourcePool.SharedState租用名额, 只在创建与销毁对象时才访问全局计数,
+ * 某段名额用完而全局名额都已租出时, 收回其他段未用的名额。
+ * 线程按线程id散列到自己的段, 借出时先在本段、再在其他段中找空闲对象, 所有段都没有空闲对象时才在本段创建新对象,
+ * 不会在别的段还有空闲对象时多创建对象。仍然没有时进入各段共用的FIFO等待队列, 入队后每段都检查一次,
+ * 之后归还到任何一段的对象都会直接交给最早的等待者。对象归还时回到它所属的段。
+ * 各段不单独启动驱逐线程, 由一个线程统一驱逐。
+ */
+public class StripedResourcePool<T> implements AutoCloseable {
+    private final ResourcePoolConfig config;
+    private final ResourcePool.SharedState<T> shared;
+    private final ResourcePool<T>[] stripes;
+    private final ScheduledExecutorService evictor;
+
+    public StripedResourcePool(ResourcePoolConfig config, PooledObjectFactory<T> factory, int stripeCount) {
+        if (stripeCount <= 0 || stripeCount > config.getMaxTotal()) {
+            throw new IllegalArgumentException("stripeCount must be in [1, maxTotal]: " + stripeCount);
+        }
+        this.config = config;
+        //每段每次租用的名额, 批量越大访问全局计数越少, 但闲置在各段的名额越多
+        this.shared = new ResourcePool.SharedState<>(config.getMaxTotal(),
+                Math.max(1, config.getMaxTotal() / (stripeCount * 4)));
+        this.stripes = newStripes(stripeCount);
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new ResourcePool<>(stripeConfig(config, i, stripeCount), factory, shared);
+        }
+        long period = config.getTimeBetweenEvictionRunsMillis();
+        if (period > 0) {
+            evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "pool-evictor-" + config.getName());
+                thread.setDaemon(true);
+                return thread;
+            });
+            evictor.scheduleWithFixedDelay(() -> {
+                for (ResourcePool<T> stripe : stripes) {
+                    stripe.evict();
+                }
+            }, period, period, TimeUnit.MILLISECONDS);
+        } else {
+            evictor = null;
+        }
+    }
+
+    public PooledObject<T> borrow() {
+        return borrow(config.getMaxWaitMillis());
+    }
+
+    public PooledObject<T> borrow(long timeoutMillis) {
+        int home = homeStripe();
+        PooledObject<T> pooled = shared.hasWaiters() ? null : tryBorrow(home);
+        if (pooled != null) {
+            return pooled;
+        }
+        //各段的等待队列是同一个, 在本段等待即可
+        CompletableFuture<PooledObject<T>> waiting = stripes[home].borrowAsync(timeoutMillis);
+        notifyOtherStripes(home);
+        return stripes[home].await(waiting);
+    }
+
+    public CompletableFuture<PooledObject<T>> borrowAsync(long timeoutMillis) {
+        int home = homeStripe();
+        PooledObject<T> pooled = shared.hasWaiters() ? null : tryBorrow(home);
+        if (pooled != null) {
+            return CompletableFuture.completedFuture(pooled);
+        }
+        CompletableFuture<PooledObject<T>> waiting = stripes[home].borrowAsync(timeoutMillis);
+        notifyOtherStripes(home);
+        return waiting;
+    }
+
+    public PooledObject<T> tryBorrow() {
+        return tryBorrow(homeStripe());
+    }
+
+    //先从本段、再按顺序从相邻的段取空闲对象, 都没有时才在本段创建
+    private PooledObject<T> tryBorrow(int home) {
+        for (int i = 0; i < stripes.length; i++) {
+            PooledObject<T> pooled = stripes[(home + i) % stripes.length].tryBorrowIdle();
+            if (pooled != null) {
+                return pooled;
+            }
+        }
+        return stripes[home].tryCreate();
+    }
+
+    //入队之后其他段也检查一次: 入队前归还到其他段的对象或空出的名额, 它们的归还线程可能没有看到这个等待者
+    private void notifyOtherStripes(int home) {
+        for (int i = 1; i < stripes.length; i++) {
+            stripes[(home + i) % stripes.length].notifyWaiters();
+        }
+    }
+
+    //对象回到它所属的段, 有等待者时直接交给最早的等待者
+    public void returnObject(PooledObject<T> pooled) {
+        pooled.close();
+    }
+
+    public int getNumActive() {
+        int active = 0;
+        for (ResourcePool<T> stripe : stripes) {
+            active += stripe.getNumActive();
+        }
+        return active;
+    }
+
+    public int getNumIdle() {
+        int idle = 0;
+        for (ResourcePool<T> stripe : stripes) {
+            idle += stripe.getNumIdle();
+        }
+        return idle;
+    }
+
+    public int getNumTotal() {
+        int total = 0;
+        for (ResourcePool<T> stripe : stripes) {
+            total += stripe.getNumTotal();
+        }
+        return total;
+    }
+
+    public int getNumWaiters() {
+        return shared.getNumWaiters();
+    }
+
+    public int getStripeCount() {
+        return stripes.length;
+    }
+
+    @Override
+    public void close() {
+        if (evictor != null) {
+            evictor.shutdownNow();
+        }
+        for (ResourcePool<T> stripe : stripes) {
+            stripe.close();
+        }
+    }
+
+    //线程id经过混合后取模, 相邻id的线程落在不同的段
+    private int homeStripe() {
+        long h = Thread.currentThread().getId() * 0x9E3779B97F4A7C15L;
+        return (int) ((h >>> 32) % stripes.length);
+    }
+
+    //不能直接创建泛型数组
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static <T> ResourcePool<T>[] newStripes(int stripeCount) {
+        return new ResourcePool[stripeCount];
+    }
+
+    //maxTotal由租用的名额限制, 这里只是上界; maxIdle、minIdle按段均分
+    private static ResourcePoolConfig stripeConfig(ResourcePoolConfig config, int index, int stripeCount) {
+        return new ResourcePoolConfig.Builder()
+                .setName(config.getName() + "-" + index)
+                .setMaxTotal(config.getMaxTotal())
+                .setMaxIdle(share(config.getMaxIdle(), index, stripeCount))
+                .setMinIdle(share(config.getMinIdle(), index, stripeCount))
+                //各段的驱逐由分段池统一调度
+                .setTimeBetweenEvictionRunsMillis(0)
+                .setMinEvictableIdleTimeMillis(config.getMinEvictableIdleTimeMillis())
+                .setTestOnBorrow(config.isTestOnBorrow())
+                .setThreadLocalCacheSize(config.getThreadLocalCacheSize())
+                .setMaxWaitMillis(config.getMaxWaitMillis())
+                .build();
+    }
+
+    //把total均分到stripeCount段, 余数分给前面的段; total越大每段分到的越多, 因此minIdle <= maxIdle在每段都成立
+    private static int share(int total, int index, int stripeCount) {
+        return total / stripeCount + (index < total % stripeCount ? 1 : 0);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        ResourcePoolConfig config = new ResourcePoolConfig.Builder()
+                .setName("dbconnectionpool")
+                .setMaxTotal(10)
+                .setMaxIdle(10)
+                .setMinIdle(3)
+                .build();
+        AtomicInteger sequence = new AtomicInteger();
+        StripedResourcePool<String> pool = new StripedResourcePool<>(config, () -> "connection-" + sequence.incrementAndGet(), 4);
+        System.out.println("stripes: " + pool.getStripeCount() + ", prewarmed idle: " + pool.getNumIdle());
+
+        CountDownLatch done = new CountDownLatch(16);
+        for (int i = 0; i < 16; i++) {
+            new Thread(() -> {
+                for (int j = 0; j < 1000; j++) {
+                    try (PooledObject<String> connection = pool.borrow(1000)) {
+                        connection.getObject().length();
+                    }
+                }
+                done.countDown();
+            }).start();
+        }
+        done.await();
+        //总数不超过全局maxTotal
+        System.out.println("created: " + sequence.get() + ", total: " + pool.getNumTotal() + ", idle: " + pool.getNumIdle());
+        pool.close();
+    }
+}
@@ -1,6 +1,6 @@
 package com.whl.codes.designPatterns.creation.singleton;
 
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author whl
@@ -9,7 +9,7 @@ import java.util.concurrent.atomic.AtomicInteger;
  * @Description:
  */
 public class IdGenerator {
-    private AtomicInteger atomicInteger = new AtomicInteger(0);
+    private AtomicLong id = new AtomicLong(0);
     private static final IdGenerator instance = new IdGenerator();
 
     private IdGenerator() {
@@ -20,6 +20,23 @@ public class IdGenerator {
     }
 
     public long getId() {
-        return atomicInteger.incrementAndGet();
+        return id.incrementAndGet();
+    }
+
+    /**
+     * 一次原子操作预留count个连续ID
+     * @param count
+     * @return
+     */
+    public IdRange getIds(int count) {
+        return IdRange.reserve(id, count);
+    }
+
+    /**
+     * 一次原子操作预留ids.length个连续ID并依次填充到ids中
+     * @param ids
+     */
+    public void fill(long[] ids) {
+        IdRange.fill(id, ids);
     }
 }
\ No newline at end of file
@@ -29,4 +29,21 @@ public class IdGeneratorDoubleCheck {
     public long getId() {
         return id.incrementAndGet();
     }
+
+    /**
+     * 一次原子操作预留count个连续ID
+     * @param count
+     * @return
+     */
+    public IdRange getIds(int count) {
+        return IdRange.reserve(id, count);
+    }
+
+    /**
+     * 一次原子操作预留ids.length个连续ID并依次填充到ids中
+     * @param ids
+     */
+    public void fill(long[] ids) {
+        IdRange.fill(id, ids);
+    }
 }
@@ -0,0 +1,146 @@
+package com.whl.codes.designPatterns.creation.singleton;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author whl
+ * @version V1.0
+ * @Title: 可持久化的单例(高水位检查点)
+ * @Description: 计数器本身仍然是内存中的AtomicLong, 另外在一个内存映射文件中记录"高水位":
+ * 所有已经发出去的ID都不会超过高水位。ID超过高水位时一次性向前预留chunkSize个ID并写入检查点,
+ * 因此每个ID的持久化开销被摊薄到一次比较。重启后从检查点中的高水位之后继续分配, 不会发出重复的ID。
+ * <p>
+ * 检查点写入内存映射区域后即使进程崩溃也会由操作系统落盘; sync为true时每次预留都会force,
+ * 额外保证机器掉电后的持久性。检查点交替写入两个槽位, 写到一半崩溃时另一个槽位仍然有效。
+ */
+public class IdGeneratorDurable {
+    private static final long MAGIC = 0x49444757_4D41524BL;
+    private static final int SLOT_SIZE = 32;
+    private static final int FILE_SIZE = SLOT_SIZE * 2;
+
+    private static final int DEFAULT_CHUNK_SIZE = 100000;
+
+    //检查点文件通过启动参数 -Did.durable.file=xxx 指定
+    private static final String CHECKPOINT_FILE_PROPERTY = "id.durable.file";
+
+    private final AtomicLong id;
+    private final int chunkSize;
+    private final boolean sync;
+    private final MappedByteBuffer checkpoint;
+
+    //已经持久化的高水位, 只在synchronized中修改
+    private volatile long watermark;
+    private int nextSlot;
+
+    public IdGeneratorDurable(Path file, int chunkSize, boolean sync) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+        this.sync = sync;
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            this.checkpoint = channel.map(FileChannel.MapMode.READ_WRITE, 0, FILE_SIZE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open checkpoint file " + file, e);
+        }
+        long slot0 = readSlot(0);
+        long slot1 = readSlot(1);
+        if (slot0 < 0 && slot1 < 0 && !isBlank()) {
+            throw new IllegalStateException("Corrupted checkpoint file " + file);
+        }
+        this.watermark = Math.max(0, Math.max(slot0, slot1));
+        //下一次写入覆盖较旧的槽位
+        this.nextSlot = slot0 >= slot1 ? 1 : 0;
+        this.id = new AtomicLong(watermark);
+    }
+
+    private static class SingletonHolder {
+        private static final IdGeneratorDurable instance = new IdGeneratorDurable(
+                Paths.get(System.getProperty(CHECKPOINT_FILE_PROPERTY,
+                        Paths.get(System.getProperty("java.io.tmpdir"), "id-generator.hwm").toString())),
+                DEFAULT_CHUNK_SIZE, false);
+    }
+
+    public static IdGeneratorDurable getInstance() {
+        return SingletonHolder.instance;
+    }
+
+    public long getId() {
+        long next = id.incrementAndGet();
+        if (next > watermark) {
+            advanceWatermark(next);
+        }
+        return next;
+    }
+
+    public IdRange getIds(int count) {
+        IdRange.checkCount(count);
+        long end = id.addAndGet(count);
+        if (end > watermark) {
+            advanceWatermark(end);
+        }
+        return new IdRange(end - count + 1, end + 1);
+    }
+
+    public long getWatermark() {
+        return watermark;
+    }
+
+    //先持久化新的高水位, 再让调用方拿到超过旧高水位的ID
+    private synchronized void advanceWatermark(long required) {
+        if (required <= watermark) {
+            return;
+        }
+        long newWatermark = Math.max(watermark + chunkSize, required);
+        writeSlot(nextSlot, newWatermark);
+        nextSlot ^= 1;
+        watermark = newWatermark;
+    }
+
+    private void writeSlot(int slot, long value) {
+        int offset = slot * SLOT_SIZE;
+        checkpoint.putLong(offset, MAGIC);
+        checkpoint.putLong(offset + 8, value);
+        checkpoint.putLong(offset + 16, checksum(value));
+        if (sync) {
+            checkpoint.force(offset, SLOT_SIZE);
+        }
+    }
+
+    //返回槽位中的高水位, 槽位无效时返回-1
+    private long readSlot(int slot) {
+        int offset = slot * SLOT_SIZE;
+        long value = checkpoint.getLong(offset + 8);
+        if (checkpoint.getLong(offset) != MAGIC || checkpoint.getLong(offset + 16) != checksum(value) || value < 0) {
+            return -1;
+        }
+        return value;
+    }
+
+    private boolean isBlank() {
+        for (int i = 0; i < FILE_SIZE; i += Long.BYTES) {
+            if (checkpoint.getLong(i) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long checksum(long value) {
+        return Long.rotateLeft(value, 17) ^ MAGIC;
+    }
+
+    public static void main(String[] args) {
+        IdGeneratorDurable generator = IdGeneratorDurable.getInstance();
+        //每次运行都会从上一次运行的高水位之后开始分配
+        System.out.println(generator.getId() + ", watermark: " + generator.getWatermark());
+    }
+}
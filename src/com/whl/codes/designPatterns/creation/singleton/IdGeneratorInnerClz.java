@@ -1,6 +1,6 @@
 package com.whl.codes.designPatterns.creation.singleton;
 
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author whl
@@ -9,8 +9,7 @@ import java.util.concurrent.atomic.AtomicInteger;
  * @Description:
  */
 public class IdGeneratorInnerClz {
-    private AtomicInteger atomicInteger = new AtomicInteger(0);
-    private static IdGeneratorInnerClz instance;
+    private AtomicLong id = new AtomicLong(0);
 
     private IdGeneratorInnerClz() {
     }
@@ -20,10 +19,27 @@ public class IdGeneratorInnerClz {
     }
 
     public static IdGeneratorInnerClz getInstance() {
-        return instance;
+        return SingletonHolder.instance;
     }
 
     public long getId() {
-        return atomicInteger.incrementAndGet();
+        return id.incrementAndGet();
+    }
+
+    /**
+     * 一次原子操作预留count个连续ID
+     * @param count
+     * @return
+     */
+    public IdRange getIds(int count) {
+        return IdRange.reserve(id, count);
+    }
+
+    /**
+     * 一次原子操作预留ids.length个连续ID并依次填充到ids中
+     * @param ids
+     */
+    public void fill(long[] ids) {
+        IdRange.fill(id, ids);
     }
 }
@@ -1,41 +1,64 @@
 package com.whl.codes.designPatterns.creation.singleton;
 
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author whl
  * @version V1.0
  * @Title: 线程间单例
- * @Description:
+ * @Description: 每个线程持有一个实例, 实例保存在ThreadLocal中, 线程结束时随线程一起被回收。
+ * getUniqueId()从全局计数器中一次领取一整块ID(BLOCK_SIZE个), 块内的分配只在当前线程中进行,
+ * 既没有Map查找也没有原子操作, 用完一块才会对全局计数器做一次getAndAdd。
  */
 public class IdGeneratorOfThread {
+    private static final int BLOCK_SIZE = 1024;
+
+    //所有线程共享的全局计数器, 只在领取新块时访问
+    private static final AtomicLong globalId = new AtomicLong(0);
+
+    private static final ThreadLocal<IdGeneratorOfThread> instances =
+            ThreadLocal.withInitial(IdGeneratorOfThread::new);
+
     private AtomicLong id = new AtomicLong(0);
 
-    private static final ConcurrentHashMap<Long, IdGeneratorOfThread> instances = new ConcurrentHashMap<>();
+    //当前块中下一个可分配的ID与块的上界(不含), 只会被所属线程访问
+    private long nextBlockId;
+    private long blockLimit;
 
     private IdGeneratorOfThread() {
     }
 
     public static IdGeneratorOfThread getInstance() {
-        Long currentThreadId = Thread.currentThread().getId();
-        //如果当前线程Id在Map中并不存在实例, 则创建
-        instances.putIfAbsent(currentThreadId, new IdGeneratorOfThread());
-        //返回创建后的实例
-        return instances.get(currentThreadId);
+        //如果当前线程还没有实例, 则由withInitial创建
+        return instances.get();
     }
 
     public long getId() {
         return id.incrementAndGet();
     }
 
+    /**
+     * 获取全局唯一的ID, 只能在实例所属的线程中调用
+     * @return
+     */
+    public long getUniqueId() {
+        if (nextBlockId == blockLimit) {
+            long base = globalId.getAndAdd(BLOCK_SIZE);
+            nextBlockId = base + 1;
+            blockLimit = base + BLOCK_SIZE + 1;
+        }
+        return nextBlockId++;
+    }
+
     public static void main(String[] args) {
         Thread t1 = new Thread(() -> {
             System.out.println(IdGeneratorOfThread.getInstance() == IdGeneratorOfThread.getInstance());
+            System.out.println(IdGeneratorOfThread.getInstance().getUniqueId());
         });
         t1.start();
         Thread t2 = new Thread(() -> {
             System.out.println(IdGeneratorOfThread.getInstance() == IdGeneratorOfThread.getInstance());
+            System.out.println(IdGeneratorOfThread.getInstance().getUniqueId());
         });
         t2.start();
     }
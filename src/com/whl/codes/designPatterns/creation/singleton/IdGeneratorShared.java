@@ -0,0 +1,110 @@
+package com.whl.codes.designPatterns.creation.singleton;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * @author whl
+ * @version V1.0
+ * @Title: 进程间单例(主机级别)
+ * @Description: 线程间单例把单例的作用域缩小到线程, 这里把作用域扩大到同一台主机上的所有JVM进程:
+ * 计数器存放在一个共享的内存映射文件中, 各进程映射的是同一块物理内存, 通过VarHandle对其做原子的getAndAdd,
+ * 因此不需要网络服务就能在多个进程之间得到同一个单调递增的序列。
+ * <p>
+ * 文件的初始化在FileLock中完成, magic最后写入: 初始化过程中崩溃的进程只会留下magic为0的文件, 由下一个进程重新初始化;
+ * FileLock在进程退出时由操作系统释放, 不存在残留的锁。magic不匹配或文件被截断时拒绝使用, 避免发出重复的ID。
+ */
+public class IdGeneratorShared {
+    private static final long MAGIC = 0x49445348_41524544L;
+    private static final long VERSION = 1;
+
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 8;
+    //计数器单独占用一个缓存行
+    private static final int COUNTER_OFFSET = 64;
+    private static final int FILE_SIZE = 128;
+
+    private static final VarHandle LONG_VIEW =
+            MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    //共享文件通过启动参数 -Did.shared.file=xxx 指定, 推荐放在/dev/shm下
+    private static final String SHARED_FILE_PROPERTY = "id.shared.file";
+
+    private final MappedByteBuffer buffer;
+
+    public IdGeneratorShared(Path file) {
+        //同一个JVM内对同一个文件重复加FileLock会抛出OverlappingFileLockException
+        synchronized (IdGeneratorShared.class) {
+            try (FileChannel channel = FileChannel.open(file,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                //文件锁在通道关闭时自动释放
+                channel.lock();
+                long size = channel.size();
+                if (size > 0 && size < FILE_SIZE && hasMagic(channel)) {
+                    throw new IllegalStateException("Truncated id file " + file);
+                }
+                this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, FILE_SIZE);
+                initialize(file);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot open shared id file " + file, e);
+            }
+        }
+    }
+
+    private static class SingletonHolder {
+        private static final IdGeneratorShared instance = new IdGeneratorShared(
+                Paths.get(System.getProperty(SHARED_FILE_PROPERTY,
+                        Paths.get(System.getProperty("java.io.tmpdir"), "id-generator.shared").toString())));
+    }
+
+    public static IdGeneratorShared getInstance() {
+        return SingletonHolder.instance;
+    }
+
+    public long getId() {
+        return (long) LONG_VIEW.getAndAdd(buffer, COUNTER_OFFSET, 1L) + 1;
+    }
+
+    public IdRange getIds(int count) {
+        IdRange.checkCount(count);
+        long start = (long) LONG_VIEW.getAndAdd(buffer, COUNTER_OFFSET, (long) count) + 1;
+        return new IdRange(start, start + count);
+    }
+
+    private void initialize(Path file) {
+        long magic = (long) LONG_VIEW.getVolatile(buffer, MAGIC_OFFSET);
+        if (magic == MAGIC) {
+            if ((long) LONG_VIEW.getVolatile(buffer, VERSION_OFFSET) != VERSION) {
+                throw new IllegalStateException("Unsupported id file version " + file);
+            }
+            return;
+        }
+        if (magic != 0) {
+            throw new IllegalStateException("Not an id file " + file);
+        }
+        //新文件, 或者上一个进程初始化到一半崩溃了
+        LONG_VIEW.setVolatile(buffer, COUNTER_OFFSET, 0L);
+        LONG_VIEW.setVolatile(buffer, VERSION_OFFSET, VERSION);
+        LONG_VIEW.setVolatile(buffer, MAGIC_OFFSET, MAGIC);
+    }
+
+    private static boolean hasMagic(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(Long.BYTES).order(ByteOrder.nativeOrder());
+        return channel.read(header, MAGIC_OFFSET) == Long.BYTES && header.flip().getLong() == MAGIC;
+    }
+
+    public static void main(String[] args) {
+        //同时启动多个进程运行, 各进程拿到的ID互不重复
+        IdGeneratorShared generator = IdGeneratorShared.getInstance();
+        System.out.println(generator.getId() + ", " + generator.getIds(10));
+    }
+}
@@ -0,0 +1,132 @@
+package com.whl.codes.designPatterns.creation.singleton;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author whl
+ * @version V1.0
+ * @Title: 雪花算法单例(分布式64位ID)
+ * @Description: 64位ID = 1位符号位(恒为0) + 41位毫秒时间戳 + 10位workerId + 12位序列号,
+ * 多个JVM只要workerId不同即可在不协调的情况下生成全局唯一且按时间递增的ID。
+ * 时间戳与序列号打包在同一个AtomicLong中, 通过CAS无锁推进;
+ * 同一毫秒内序列号耗尽时自旋等待下一毫秒; 检测到时钟回拨时, 小幅回拨沿用上次的时间戳继续分配, 超过容忍值则抛出异常。
+ */
+public class IdGeneratorSnowflake {
+    //起始时间 2020-01-01 00:00:00 UTC, 41位时间戳可以使用约69年
+    private static final long EPOCH = 1577836800000L;
+
+    private static final int WORKER_ID_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+
+    public static final long MAX_WORKER_ID = (1L << WORKER_ID_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    private static final long MAX_TIMESTAMP = (1L << 41) - 1;
+
+    private static final int WORKER_ID_SHIFT = SEQUENCE_BITS;
+    private static final int TIMESTAMP_SHIFT = SEQUENCE_BITS + WORKER_ID_BITS;
+
+    //允许的最大时钟回拨(毫秒), 回拨范围内沿用上次时间戳, 超过则拒绝生成
+    private static final long DEFAULT_MAX_BACKWARD_MILLIS = 5;
+
+    //workerId通过启动参数 -Did.worker=xxx 指定
+    private static final String WORKER_ID_PROPERTY = "id.worker";
+
+    private final long workerId;
+    private final long maxBackwardMillis;
+    //高位为 (时间戳 - EPOCH), 低12位为序列号
+    private final AtomicLong state = new AtomicLong(0);
+
+    public IdGeneratorSnowflake(long workerId) {
+        this(workerId, DEFAULT_MAX_BACKWARD_MILLIS);
+    }
+
+    public IdGeneratorSnowflake(long workerId, long maxBackwardMillis) {
+        if (workerId < 0 || workerId > MAX_WORKER_ID) {
+            throw new IllegalArgumentException("workerId must be between 0 and " + MAX_WORKER_ID + ": " + workerId);
+        }
+        if (maxBackwardMillis < 0) {
+            throw new IllegalArgumentException("maxBackwardMillis must not be negative: " + maxBackwardMillis);
+        }
+        this.workerId = workerId;
+        this.maxBackwardMillis = maxBackwardMillis;
+    }
+
+    private static class SingletonHolder {
+        private static final IdGeneratorSnowflake instance =
+                new IdGeneratorSnowflake(Long.getLong(WORKER_ID_PROPERTY, 0L));
+    }
+
+    public static IdGeneratorSnowflake getInstance() {
+        return SingletonHolder.instance;
+    }
+
+    public long getId() {
+        for (;;) {
+            long current = state.get();
+            long lastTimestamp = current >>> SEQUENCE_BITS;
+            long now = currentTimestamp();
+            long next;
+            if (now > lastTimestamp) {
+                //进入新的毫秒, 序列号从0开始
+                next = now << SEQUENCE_BITS;
+            } else {
+                //同一毫秒, 或者发生了容忍范围内的时钟回拨: 沿用上次的时间戳继续递增序列号
+                if (lastTimestamp - now > maxBackwardMillis) {
+                    throw new IllegalStateException("Clock moved backwards by "
+                            + (lastTimestamp - now) + "ms, refusing to generate id");
+                }
+                if ((current & SEQUENCE_MASK) == SEQUENCE_MASK) {
+                    //序列号耗尽, 等待下一毫秒后重试
+                    waitUntilAfter(lastTimestamp);
+                    continue;
+                }
+                next = current + 1;
+            }
+            if (state.compareAndSet(current, next)) {
+                return ((next >>> SEQUENCE_BITS) << TIMESTAMP_SHIFT)
+                        | (workerId << WORKER_ID_SHIFT)
+                        | (next & SEQUENCE_MASK);
+            }
+        }
+    }
+
+    public long getWorkerId() {
+        return workerId;
+    }
+
+    //从ID中解析出生成时的毫秒时间戳
+    public static long getTimestamp(long id) {
+        return (id >>> TIMESTAMP_SHIFT) + EPOCH;
+    }
+
+    public static long getWorkerId(long id) {
+        return (id >>> WORKER_ID_SHIFT) & MAX_WORKER_ID;
+    }
+
+    private long currentTimestamp() {
+        long timestamp = System.currentTimeMillis() - EPOCH;
+        if (timestamp > MAX_TIMESTAMP) {
+            throw new IllegalStateException("Timestamp bits exhausted");
+        }
+        return timestamp;
+    }
+
+    private void waitUntilAfter(long lastTimestamp) {
+        long now = currentTimestamp();
+        while (now <= lastTimestamp) {
+            if (lastTimestamp - now > maxBackwardMillis) {
+                throw new IllegalStateException("Clock moved backwards by "
+                        + (lastTimestamp - now) + "ms, refusing to generate id");
+            }
+            Thread.onSpinWait();
+            now = currentTimestamp();
+        }
+    }
+
+    public static void main(String[] args) {
+        IdGeneratorSnowflake generator = IdGeneratorSnowflake.getInstance();
+        long id = generator.getId();
+        System.out.println(id + " -> timestamp: " + getTimestamp(id) + ", worker: " + getWorkerId(id));
+        System.out.println(generator.getId() > id);
+    }
+}
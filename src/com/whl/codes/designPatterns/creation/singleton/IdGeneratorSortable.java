@@ -0,0 +1,183 @@
+package com.whl.codes.designPatterns.creation.singleton;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * @author whl
+ * @version V1.0
+ * @Title: 可按时间排序的字符串ID单例(类ULID)
+ * @Description: 128位 = 48位毫秒时间戳 + 80位随机数, 使用Crockford base32编码成26个字符, 字典序即生成时间顺序。
+ * 同一毫秒内不再重新取随机数, 而是把上一个ID的随机部分加一, 保证同一个生成器产生的ID严格递增。
+ * 除了返回String的nextId(), 还提供了直接编码到调用方提供的char[]/byte[]/ByteBuffer中的方法, 生成过程不产生任何对象。
+ */
+public class IdGeneratorSortable {
+    public static final int LENGTH = 26;
+
+    private static final char[] ENCODING = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+    private static final byte[] ENCODING_BYTES = new byte[ENCODING.length];
+
+    static {
+        for (int i = 0; i < ENCODING.length; i++) {
+            ENCODING_BYTES[i] = (byte) ENCODING[i];
+        }
+    }
+
+    private static final int TIMESTAMP_LENGTH = 10;
+    private static final long MAX_TIMESTAMP = (1L << 48) - 1;
+    private static final long RANDOM_HIGH_MASK = (1L << 16) - 1;
+
+    //上一个ID的时间戳与80位随机部分(高16位 + 低64位), 只在synchronized中访问
+    private long lastTimestamp;
+    private long randomHigh;
+    private long randomLow;
+
+    private IdGeneratorSortable() {
+    }
+
+    private static class SingletonHolder {
+        private static final IdGeneratorSortable instance = new IdGeneratorSortable();
+    }
+
+    public static IdGeneratorSortable getInstance() {
+        return SingletonHolder.instance;
+    }
+
+    public String nextId() {
+        char[] chars = new char[LENGTH];
+        nextId(chars, 0);
+        return new String(chars);
+    }
+
+    /**
+     * 将ID编码到dst[offset, offset + 26)中
+     * @param dst
+     * @param offset
+     */
+    public void nextId(char[] dst, int offset) {
+        checkBounds(dst.length, offset);
+        long timestamp, high, low;
+        synchronized (this) {
+            advance();
+            timestamp = lastTimestamp;
+            high = randomHigh;
+            low = randomLow;
+        }
+        for (int i = 0; i < LENGTH; i++) {
+            dst[offset + i] = ENCODING[symbolAt(timestamp, high, low, i)];
+        }
+    }
+
+    /**
+     * 将ID以ASCII编码到dst[offset, offset + 26)中
+     * @param dst
+     * @param offset
+     */
+    public void nextId(byte[] dst, int offset) {
+        checkBounds(dst.length, offset);
+        long timestamp, high, low;
+        synchronized (this) {
+            advance();
+            timestamp = lastTimestamp;
+            high = randomHigh;
+            low = randomLow;
+        }
+        for (int i = 0; i < LENGTH; i++) {
+            dst[offset + i] = ENCODING_BYTES[symbolAt(timestamp, high, low, i)];
+        }
+    }
+
+    /**
+     * 将ID以ASCII编码写入dst的当前位置, 写入后position前进26
+     * @param dst
+     */
+    public void nextId(ByteBuffer dst) {
+        if (dst.remaining() < LENGTH) {
+            throw new IndexOutOfBoundsException("Need " + LENGTH + " bytes, remaining: " + dst.remaining());
+        }
+        long timestamp, high, low;
+        synchronized (this) {
+            advance();
+            timestamp = lastTimestamp;
+            high = randomHigh;
+            low = randomLow;
+        }
+        for (int i = 0; i < LENGTH; i++) {
+            dst.put(ENCODING_BYTES[symbolAt(timestamp, high, low, i)]);
+        }
+    }
+
+    //从ID中解析出生成时的毫秒时间戳
+    public static long getTimestamp(CharSequence id) {
+        long timestamp = 0;
+        for (int i = 0; i < TIMESTAMP_LENGTH; i++) {
+            timestamp = (timestamp << 5) | decode(id.charAt(i));
+        }
+        return timestamp;
+    }
+
+    private void advance() {
+        long now = System.currentTimeMillis();
+        if (now > MAX_TIMESTAMP) {
+            throw new IllegalStateException("Timestamp bits exhausted");
+        }
+        if (now > lastTimestamp) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            lastTimestamp = now;
+            randomHigh = random.nextLong() & RANDOM_HIGH_MASK;
+            randomLow = random.nextLong();
+            return;
+        }
+        //同一毫秒或时钟回拨: 沿用上次的时间戳, 随机部分加一
+        if (++randomLow == 0) {
+            randomHigh = (randomHigh + 1) & RANDOM_HIGH_MASK;
+            if (randomHigh == 0) {
+                //80位随机部分溢出, 借用下一毫秒
+                lastTimestamp++;
+            }
+        }
+    }
+
+    //第index个字符对应的5位: 前10个字符编码时间戳(高2位补0), 后16个字符编码80位随机部分
+    private static int symbolAt(long timestamp, long high, long low, int index) {
+        if (index < TIMESTAMP_LENGTH) {
+            return (int) (timestamp >>> (5 * (TIMESTAMP_LENGTH - 1 - index))) & 31;
+        }
+        int shift = 5 * (LENGTH - 1 - index);
+        if (shift >= 64) {
+            return (int) (high >>> (shift - 64)) & 31;
+        }
+        if (shift > 59) {
+            return (int) ((high << (64 - shift)) | (low >>> shift)) & 31;
+        }
+        return (int) (low >>> shift) & 31;
+    }
+
+    private static int decode(char c) {
+        for (int i = 0; i < ENCODING.length; i++) {
+            if (ENCODING[i] == Character.toUpperCase(c)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Invalid character: " + c);
+    }
+
+    private static void checkBounds(int length, int offset) {
+        if (offset < 0 || offset > length - LENGTH) {
+            throw new IndexOutOfBoundsException("Need " + LENGTH + " chars from offset " + offset + ", length: " + length);
+        }
+    }
+
+    public static void main(String[] args) {
+        IdGeneratorSortable generator = IdGeneratorSortable.getInstance();
+        String first = generator.nextId();
+        String second = generator.nextId();
+        System.out.println(first + " < " + second + ": " + (first.compareTo(second) < 0));
+        System.out.println(getTimestamp(first) + " ~ " + System.currentTimeMillis());
+
+        //复用同一个缓冲区, 生成过程不产生对象
+        char[] buffer = new char[LENGTH];
+        generator.nextId(buffer, 0);
+        System.out.println(buffer);
+    }
+}
@@ -0,0 +1,74 @@
+package com.whl.codes.designPatterns.creation.singleton;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author whl
+ * @version V1.0
+ * @Title: 批量预留的ID区间
+ * @Description: 一次原子操作预留的连续ID, 区间为 [start, end)
+ */
+public class IdRange {
+    private final long start;
+    private final long end;
+
+    public IdRange(long start, long end) {
+        if (start > end) {
+            throw new IllegalArgumentException("Invalid range: [" + start + ", " + end + ")");
+        }
+        this.start = start;
+        this.end = end;
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public long getEnd() {
+        return end;
+    }
+
+    public int size() {
+        return (int) (end - start);
+    }
+
+    public long get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size());
+        }
+        return start + index;
+    }
+
+    public boolean contains(long id) {
+        return id >= start && id < end;
+    }
+
+    //一次addAndGet预留count个连续ID, 各个单例的getIds()共用
+    static IdRange reserve(AtomicLong counter, int count) {
+        checkCount(count);
+        long end = counter.addAndGet(count);
+        return new IdRange(end - count + 1, end + 1);
+    }
+
+    //一次addAndGet预留ids.length个连续ID并依次填充, 不创建IdRange对象
+    static void fill(AtomicLong counter, long[] ids) {
+        if (ids.length == 0) {
+            return;
+        }
+        long first = counter.addAndGet(ids.length) - ids.length + 1;
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = first + i;
+        }
+    }
+
+    static void checkCount(int count) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("count must be positive: " + count);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "IdRange[" + start + ", " + end + ")";
+    }
+}
@@ -0,0 +1,67 @@
+package com.whl.codes.designPatterns.creation.singleton.benchmark;
+
+import com.whl.codes.benchmark.ThroughputBenchmark;
+import com.whl.codes.designPatterns.creation.singleton.*;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * @author whl
+ * @version V1.0
+ * @Title: 单例ID生成器的竞争测试
+ * @Description: 分别在1、4、16、64个线程下测试每种单例实现 getInstance() + getId() 的吞吐量,
+ * 另外给出LongAdder与分段计数器作为参照。
+ * 运行方式: java IdGeneratorBenchmark [预热毫秒数] [测试毫秒数]
+ */
+public class IdGeneratorBenchmark {
+    private static final int[] THREADS = {1, 4, 16, 64};
+
+    public static void main(String[] args) {
+        long warmupMillis = args.length > 0 ? Long.parseLong(args[0]) : 1000;
+        long measureMillis = args.length > 1 ? Long.parseLong(args[1]) : 2000;
+
+        Map<String, Supplier<ThroughputBenchmark.Operation>> variants = new LinkedHashMap<>();
+        variants.put("IdGenerator", () -> () -> IdGenerator.getInstance().getId());
+        variants.put("IdGeneratorLazyLoad", () -> () -> IdGeneratorLazyLoad.getInstance().getId());
+        variants.put("IdGeneratorDoubleCheck", () -> () -> IdGeneratorDoubleCheck.getInstance().getId());
+        variants.put("IdGeneratorInnerClz", () -> () -> IdGeneratorInnerClz.getInstance().getId());
+        variants.put("IdGeneratorEnum", () -> () -> IdGeneratorEnum.INSTANCE.getId());
+        variants.put("IdGeneratorOfThread", () -> () -> IdGeneratorOfThread.getInstance().getId());
+        variants.put("IdGeneratorOfThread(unique)", () -> () -> IdGeneratorOfThread.getInstance().getUniqueId());
+        //参照: LongAdder只计数不返回ID, 是无竞争计数的上限
+        LongAdder adder = new LongAdder();
+        variants.put("LongAdder(reference)", () -> () -> {
+            adder.increment();
+            return 0;
+        });
+        StripedIdGenerator striped = new StripedIdGenerator();
+        variants.put("Striped(reference)", () -> striped::getId);
+
+        ThroughputBenchmark.printHeader();
+        for (Map.Entry<String, Supplier<ThroughputBenchmark.Operation>> variant : variants.entrySet()) {
+            for (int threads : THREADS) {
+                ThroughputBenchmark.run(variant.getKey(), threads, variant.getValue(), warmupMillis, measureMillis).print();
+            }
+        }
+    }
+
+    /**
+     * 分段计数器: 线程按线程id散列到不同的段, 第i段只发出模STRIPES余i的ID, 各段之间互不竞争
+     */
+    private static class StripedIdGenerator {
+        private static final int STRIPES = 64;
+        //每个计数器间隔8个long, 避免伪共享
+        private static final int PADDING = 8;
+
+        private final AtomicLongArray counters = new AtomicLongArray(STRIPES * PADDING);
+
+        long getId() {
+            int stripe = (int) (Thread.currentThread().getId() & (STRIPES - 1));
+            return counters.incrementAndGet(stripe * PADDING) * STRIPES + stripe;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.whl.codes.designPatterns.creation.singleton.segment;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * @author whl
+ * @version V1.0
+ * @Title: 基于本地文件的号段存储
+ * @Description: 每个bizTag对应目录下的一个文件, 文件中保存已经租出去的最大ID(8字节)。
+ * 租用时通过文件锁保证多进程互斥, 写入后force到磁盘, 保证重启后不会重复租出同一个号段。
+ */
+public class FileIdSegmentStore implements IdSegmentStore {
+    private static final String FILE_SUFFIX = ".segment";
+
+    private final Path directory;
+
+    public FileIdSegmentStore(Path directory) {
+        try {
+            this.directory = Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create segment directory " + directory, e);
+        }
+    }
+
+    //同一JVM内的并发租用由synchronized互斥, FileLock不允许同一JVM内重叠加锁
+    @Override
+    public synchronized IdSegment leaseSegment(String bizTag, int step) {
+        if (bizTag == null || bizTag.isEmpty()) {
+            throw new IllegalArgumentException("bizTag must not be empty");
+        }
+        if (step <= 0) {
+            throw new IllegalArgumentException("step must be positive: " + step);
+        }
+        Path file = directory.resolve(bizTag + FILE_SUFFIX);
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            //文件锁在通道关闭时自动释放
+            channel.lock();
+            ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
+            long maxId = 0;
+            if (channel.read(buffer, 0) == Long.BYTES) {
+                maxId = buffer.flip().getLong();
+            }
+            long newMaxId = maxId + step;
+            buffer.clear();
+            buffer.putLong(newMaxId).flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, buffer.position());
+            }
+            channel.force(false);
+            return new IdSegment(maxId + 1, newMaxId + 1);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot lease segment for " + bizTag, e);
+        }
+    }
+}
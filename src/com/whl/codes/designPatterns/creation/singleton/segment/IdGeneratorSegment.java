@@ -0,0 +1,150 @@
+package com.whl.codes.designPatterns.creation.singleton.segment;
+
+import java.nio.file.Paths;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * @author whl
+ * @version V1.0
+ * @Title: 号段模式单例(双buffer预加载)
+ * @Description: 每次从IdSegmentStore租用一段ID(默认10000个)缓存在内存中分配, 分配本身只是一次incrementAndGet。
+ * 当前号段使用到一定比例时, 由后台线程异步租用下一个号段; 当前号段用尽时直接切换到已经加载好的号段,
+ * 因此getId()在号段边界不需要等待存储。只有后台加载速度跟不上消耗速度时, 才会等待下一个号段加载完成。
+ */
+public class IdGeneratorSegment {
+    private static final int DEFAULT_STEP = 10000;
+    //当前号段消耗超过20%时开始预加载下一个号段
+    private static final double DEFAULT_PREFETCH_RATIO = 0.2;
+
+    //默认号段文件目录通过启动参数 -Did.segment.dir=xxx 指定
+    private static final String SEGMENT_DIR_PROPERTY = "id.segment.dir";
+    private static final String DEFAULT_BIZ_TAG = "default";
+
+    //号段加载线程是所有实例共用的守护线程
+    private static final ExecutorService LOADER = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "id-segment-loader");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final IdSegmentStore store;
+    private final String bizTag;
+    private final int step;
+    private final double prefetchRatio;
+
+    private volatile Buffer current;
+    private final AtomicReference<CompletableFuture<IdSegment>> next = new AtomicReference<>();
+
+    public IdGeneratorSegment(IdSegmentStore store, String bizTag) {
+        this(store, bizTag, DEFAULT_STEP, DEFAULT_PREFETCH_RATIO);
+    }
+
+    public IdGeneratorSegment(IdSegmentStore store, String bizTag, int step, double prefetchRatio) {
+        if (step <= 0) {
+            throw new IllegalArgumentException("step must be positive: " + step);
+        }
+        if (prefetchRatio < 0 || prefetchRatio >= 1) {
+            throw new IllegalArgumentException("prefetchRatio must be in [0, 1): " + prefetchRatio);
+        }
+        this.store = store;
+        this.bizTag = bizTag;
+        this.step = step;
+        this.prefetchRatio = prefetchRatio;
+        this.current = new Buffer(store.leaseSegment(bizTag, step), prefetchRatio);
+    }
+
+    private static class SingletonHolder {
+        private static final IdGeneratorSegment instance = new IdGeneratorSegment(
+                new FileIdSegmentStore(Paths.get(System.getProperty(SEGMENT_DIR_PROPERTY,
+                        System.getProperty("java.io.tmpdir")), "id-segments")),
+                DEFAULT_BIZ_TAG);
+    }
+
+    public static IdGeneratorSegment getInstance() {
+        return SingletonHolder.instance;
+    }
+
+    public long getId() {
+        for (;;) {
+            Buffer buffer = current;
+            long id = buffer.cursor.getAndIncrement();
+            if (id < buffer.end) {
+                //恰好只有一个线程会拿到预加载点上的ID, 由它触发预加载
+                if (id == buffer.prefetchAt) {
+                    prefetch();
+                }
+                return id;
+            }
+            switchBuffer(buffer);
+        }
+    }
+
+    public String getBizTag() {
+        return bizTag;
+    }
+
+    private CompletableFuture<IdSegment> prefetch() {
+        CompletableFuture<IdSegment> future = next.get();
+        if (future == null) {
+            CompletableFuture<IdSegment> loading = new CompletableFuture<>();
+            if (next.compareAndSet(null, loading)) {
+                LOADER.execute(() -> {
+                    try {
+                        loading.complete(store.leaseSegment(bizTag, step));
+                    } catch (Throwable e) {
+                        loading.completeExceptionally(e);
+                    }
+                });
+                future = loading;
+            } else {
+                future = next.get();
+            }
+        }
+        return future;
+    }
+
+    //号段用尽时切换到预加载好的号段, 只有一个线程真正执行切换
+    private synchronized void switchBuffer(Buffer exhausted) {
+        if (current != exhausted) {
+            return;
+        }
+        CompletableFuture<IdSegment> future = prefetch();
+        IdSegment segment;
+        try {
+            segment = future.join();
+        } catch (CompletionException e) {
+            //预加载失败的结果已经过时, 在这里同步重新租用一次, 仍然失败才抛给调用方
+            segment = store.leaseSegment(bizTag, step);
+        } finally {
+            next.compareAndSet(future, null);
+        }
+        current = new Buffer(segment, prefetchRatio);
+    }
+
+    private static class Buffer {
+        private final AtomicLong cursor;
+        private final long end;
+        private final long prefetchAt;
+
+        Buffer(IdSegment segment, double prefetchRatio) {
+            this.cursor = new AtomicLong(segment.getStart());
+            this.end = segment.getEnd();
+            this.prefetchAt = segment.getStart() + (long) (segment.size() * prefetchRatio);
+        }
+    }
+
+    public static void main(String[] args) {
+        IdGeneratorSegment generator = IdGeneratorSegment.getInstance();
+        long first = generator.getId();
+        long last = first;
+        for (int i = 0; i < 3 * DEFAULT_STEP; i++) {
+            last = generator.getId();
+        }
+        System.out.println(first + " -> " + last);
+    }
+}
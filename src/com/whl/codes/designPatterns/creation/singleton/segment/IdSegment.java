@@ -0,0 +1,37 @@
+package com.whl.codes.designPatterns.creation.singleton.segment;
+
+/**
+ * @author whl
+ * @version V1.0
+ * @Title: 号段
+ * @Description: 从存储中租用的一段连续ID, 区间为 [start, end)
+ */
+public class IdSegment {
+    private final long start;
+    private final long end;
+
+    public IdSegment(long start, long end) {
+        if (start >= end) {
+            throw new IllegalArgumentException("Empty segment: [" + start + ", " + end + ")");
+        }
+        this.start = start;
+        this.end = end;
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public long getEnd() {
+        return end;
+    }
+
+    public long size() {
+        return end - start;
+    }
+
+    @Override
+    public String toString() {
+        return "IdSegment[" + start + ", " + end + ")";
+    }
+}
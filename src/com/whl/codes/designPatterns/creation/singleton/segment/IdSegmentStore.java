@@ -0,0 +1,17 @@
+package com.whl.codes.designPatterns.creation.singleton.segment;
+
+/**
+ * @author whl
+ * @version V1.0
+ * @Title: 号段存储
+ * @Description: 号段的持久化存储, 可以基于数据库、本地文件等实现
+ */
+public interface IdSegmentStore {
+    /**
+     * 为业务标识bizTag租用一个长度为step的新号段, 同一个bizTag租出去的号段之间不能重叠
+     * @param bizTag 业务标识
+     * @param step 号段长度
+     * @return
+     */
+    IdSegment leaseSegment(String bizTag, int step);
+}
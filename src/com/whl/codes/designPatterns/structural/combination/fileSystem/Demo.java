@@ -16,9 +16,20 @@ public class Demo {
         this.sourcePath = sourcePath;
     }
 
-    public void buildOrganization() {
+    public Directory buildOrganization() {
         Directory dir = new Directory(sourcePath);
         buildOrganization(dir);
+        return dir;
+    }
+
+    //使用ForkJoinPool并行构建, 结果与buildOrganization()相同
+    public Directory buildOrganization(int parallelism) {
+        return new ParallelTreeBuilder(parallelism).build(sourcePath);
+    }
+
+    //使用NIO扫描, 构建时一次性采集大小与修改时间
+    public Directory buildOrganizationNio() {
+        return new NioTreeBuilder().build(sourcePath);
     }
 
     private void buildOrganization(Directory dir) {
@@ -28,14 +39,22 @@ public class Demo {
         for (String s : childFilePaths) {
             if (new java.io.File(s).isDirectory()) {
                 Directory directory = new Directory(s);
-                dir.addSubNode(directory);
+                //先构建完子树再挂到父目录上, 子树的计数只向上累加一次
                 buildOrganization(directory);
+                dir.addSubNode(directory);
             } else {
                 dir.addSubNode(new File(s));
             }
         }
     }
 
+    //为树中所有目录注册WatchService, 之后文件的增删改会增量同步到树上
+    public FileSystemWatcher startLiveSync(Directory root) {
+        FileSystemWatcher watcher = new FileSystemWatcher(root);
+        watcher.start();
+        return watcher;
+    }
+
     public int countNumOfFiles(FileSystemNode dirOrFile) {
         return dirOrFile.countNumOfFiles();
     }
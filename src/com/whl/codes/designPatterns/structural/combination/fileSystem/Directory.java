@@ -2,46 +2,133 @@ package com.whl.designPatterns.combinationMode.fileSystem;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
 /**
  * @author whl
  * @version V1.0
  * @Title: 目录类
- * @Description:
+ * @Description: 目录缓存了整棵子树的文件数与总大小, 子节点增删或文件大小变化时沿父节点链向上增量更新,
+ * countNumOfFiles()与countSizeOfFiles()都是O(1)。recountNumOfFiles()/recountSizeOfFiles()保留完整的递归计算, 用于校验。
+ * 子节点按路径保存在LinkedHashMap中, 保持加入顺序, 按路径删除是O(1)。
+ * 同一个目录的子节点只能由一个线程修改; 缓存的计数用原子操作更新, 不同子树可以并发修改, 其他线程可以随时读取。
  */
 public class Directory extends FileSystemNode{
-    private List<FileSystemNode> subNodes;
+    private static final AtomicIntegerFieldUpdater<Directory> NUM_OF_FILES =
+            AtomicIntegerFieldUpdater.newUpdater(Directory.class, "numOfFiles");
+    private static final AtomicLongFieldUpdater<Directory> SIZE_OF_FILES =
+            AtomicLongFieldUpdater.newUpdater(Directory.class, "sizeOfFiles");
+
+    private Map<String, FileSystemNode> subNodes;
+    private volatile int numOfFiles;
+    private volatile long sizeOfFiles;
 
     public Directory(String path) {
         super(path, false);
-        subNodes = new ArrayList<>();
+        subNodes = new LinkedHashMap<>();
+    }
+
+    public Directory(String path, long lastModifiedMillis) {
+        super(path, false, lastModifiedMillis);
+        subNodes = new LinkedHashMap<>();
     }
 
     @Override
     public int countNumOfFiles() {
+        return numOfFiles;
+    }
+
+    @Override
+    public long countSizeOfFiles() {
+        return sizeOfFiles;
+    }
+
+    @Override
+    public int recountNumOfFiles() {
         int res = 0;
-        for (FileSystemNode fileOrDir : subNodes) {
+        for (FileSystemNode fileOrDir : subNodes.values()) {
             //如果fileOrDir是文件类, 那么res += 1
             //如果fileOrDir是目录类, 那么递归继续计数
-            res += fileOrDir.countNumOfFiles();
+            res += fileOrDir.recountNumOfFiles();
         }
         return res;
     }
 
     @Override
-    public long countSizeOfFiles() {
+    public long recountSizeOfFiles() {
         long sizeOfFiles = 0;
-        for (FileSystemNode fileOrDir : subNodes) {
+        for (FileSystemNode fileOrDir : subNodes.values()) {
             //如果fileOrDir是文件类, 那么sizeOfFiles += fileOrDir文件的大小
             //如果fileOrDir是目录类, 那么递归继续计数
-            sizeOfFiles += countSizeOfFiles();
+            sizeOfFiles += fileOrDir.recountSizeOfFiles();
         }
         return sizeOfFiles;
     }
 
+    /**
+     * 加入子节点, 子节点(及其子树)的文件数与大小累加到本目录和所有祖先目录
+     * @param fileOrDir 尚未挂在其他目录下的节点
+     */
     public void addSubNode(FileSystemNode fileOrDir) {
-        subNodes.add(fileOrDir);
+        if (fileOrDir.parent != null) {
+            throw new IllegalStateException("Node already has a parent: " + fileOrDir.getPath());
+        }
+        if (subNodes.containsKey(fileOrDir.getPath())) {
+            throw new IllegalArgumentException("Duplicate node: " + fileOrDir.getPath());
+        }
+        subNodes.put(fileOrDir.getPath(), fileOrDir);
+        fileOrDir.parent = this;
+        adjust(fileOrDir.countNumOfFiles(), fileOrDir.countSizeOfFiles());
+    }
+
+    /**
+     * 按路径删除子节点, 本目录和所有祖先目录减去它的文件数与大小
+     * @param path
+     * @return 被删除的节点, 不存在时返回null
+     */
+    public FileSystemNode removeSubNode(String path) {
+        FileSystemNode fileOrDir = subNodes.remove(path);
+        if (fileOrDir != null) {
+            fileOrDir.parent = null;
+            adjust(-fileOrDir.countNumOfFiles(), -fileOrDir.countSizeOfFiles());
+        }
+        return fileOrDir;
+    }
+
+    /**
+     * 用新节点替换同路径的子节点, 例如重新扫描一棵子树之后
+     * @param fileOrDir
+     * @return 被替换的节点, 不存在时返回null
+     */
+    public FileSystemNode replaceSubNode(FileSystemNode fileOrDir) {
+        FileSystemNode old = removeSubNode(fileOrDir.getPath());
+        addSubNode(fileOrDir);
+        return old;
+    }
+
+    public FileSystemNode getSubNode(String path) {
+        return subNodes.get(path);
+    }
+
+    public Collection<FileSystemNode> getSubNodes() {
+        return Collections.unmodifiableCollection(subNodes.values());
+    }
+
+    //沿父节点链向上更新缓存的计数
+    void adjust(int filesDelta, long sizeDelta) {
+        if (filesDelta == 0 && sizeDelta == 0) {
+            return;
+        }
+        for (Directory dir = this; dir != null; dir = dir.parent) {
+            NUM_OF_FILES.addAndGet(dir, filesDelta);
+            SIZE_OF_FILES.addAndGet(dir, sizeDelta);
+        }
     }
 
     public List<String> getChildFilePaths() {
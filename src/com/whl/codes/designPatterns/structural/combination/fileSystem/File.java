@@ -7,10 +7,19 @@ package com.whl.designPatterns.combinationMode.fileSystem;
  * @Description:
  */
 public class File extends FileSystemNode{
+    //构建时采集的文件大小, 为-1表示未采集, 第一次统计时查询文件系统并缓存
+    private volatile long size = -1;
+
     public File(String path) {
         super(path, true);
     }
 
+    //使用扫描时已读到的属性, 之后统计大小不再产生系统调用
+    public File(String path, long size, long lastModifiedMillis) {
+        super(path, true, lastModifiedMillis);
+        this.size = size;
+    }
+
     @Override
     public int countNumOfFiles() {
         return 1;
@@ -18,7 +27,27 @@ public class File extends FileSystemNode{
 
     @Override
     public long countSizeOfFiles() {
+        long size = this.size;
+        if (size >= 0) {
+            return size;
+        }
         java.io.File file = new java.io.File(path);
-        return file.exists() ? file.length() : 0;
+        size = file.exists() ? file.length() : 0;
+        this.size = size;
+        return size;
+    }
+
+    /**
+     * 文件被修改后更新大小与修改时间, 大小的变化量沿父目录链向上累加
+     * @param size
+     * @param lastModifiedMillis
+     */
+    public void update(long size, long lastModifiedMillis) {
+        long delta = size - countSizeOfFiles();
+        this.size = size;
+        this.lastModifiedMillis = lastModifiedMillis;
+        if (parent != null) {
+            parent.adjust(0, delta);
+        }
     }
 }
@@ -9,17 +9,43 @@ package com.whl.designPatterns.combinationMode.fileSystem;
 public abstract class FileSystemNode {
     protected String path;
     protected boolean isFile;
+    //构建时采集的最后修改时间, 毫秒; 未采集时为0
+    protected long lastModifiedMillis;
+    //所在的目录, 由Directory.addSubNode()/removeSubNode()维护
+    protected Directory parent;
 
     public FileSystemNode(String path, boolean isFile) {
         this.path = path;
         this.isFile = isFile;
     }
 
+    public FileSystemNode(String path, boolean isFile, long lastModifiedMillis) {
+        this(path, isFile);
+        this.lastModifiedMillis = lastModifiedMillis;
+    }
+
     public abstract int countNumOfFiles();
 
     public abstract long countSizeOfFiles();
 
+    //不使用目录缓存的完整递归计算, 用于校验增量维护的结果
+    public int recountNumOfFiles() {
+        return countNumOfFiles();
+    }
+
+    public long recountSizeOfFiles() {
+        return countSizeOfFiles();
+    }
+
     public String getPath() {
         return path;
     }
+
+    public long getLastModifiedMillis() {
+        return lastModifiedMillis;
+    }
+
+    public Directory getParent() {
+        return parent;
+    }
 }
@@ -0,0 +1,275 @@
+package com.whl.designPatterns.combinationMode.fileSystem;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * @author whl
+ * @version V1.0
+ * @Title: 目录树的实时同步
+ * @Description: 为树中的每个Directory注册WatchService, 由一个后台线程把事件增量应用到内存中的树上:
+ * 新建文件加入节点, 新建目录逐层先注册监听再列出子项, 构建好子树后挂上; 删除时摘掉节点并取消子树的监听;
+ * 修改文件时重新读取一次属性并调用File.update()。目录缓存的计数随之增量更新, 不需要定期全量重建。
+ * 事件溢出(OVERFLOW)时只重新列出该目录的直接子项, 已有子目录的内容由它们自己收到的OVERFLOW处理。
+ * 树只由监听线程修改, 其他线程可以随时读取countNumOfFiles()/countSizeOfFiles()。
+ * 注意: 构建树与start()之间发生的变化不会被看到; Linux上每个目录占用一个inotify watch, 目录很多时需要调大max_user_watches。
+ */
+public class FileSystemWatcher implements AutoCloseable {
+    private final Directory root;
+    private final WatchService watchService;
+    //只在start()与监听线程中访问
+    private final Map<WatchKey, Directory> directories = new HashMap<>();
+    private final Map<Directory, WatchKey> keys = new HashMap<>();
+    private Thread thread;
+
+    public FileSystemWatcher(Directory root) {
+        this.root = root;
+        try {
+            this.watchService = FileSystems.getDefault().newWatchService();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        registerAll(root);
+        thread = new Thread(this::processEvents, "fs-watcher-" + root.getPath());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void close() {
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public Directory getRoot() {
+        return root;
+    }
+
+    private void processEvents() {
+        try {
+            for (;;) {
+                WatchKey key = watchService.take();
+                Directory dir = directories.get(key);
+                if (dir != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        try {
+                            handle(dir, event);
+                        } catch (RuntimeException e) {
+                            //单个事件处理失败时重新扫描这个目录, 保证计数正确
+                            resync(dir);
+                        }
+                    }
+                }
+                if (!key.reset()) {
+                    //目录已被删除或不可访问
+                    Directory removed = directories.remove(key);
+                    if (removed != null) {
+                        keys.remove(removed);
+                    }
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            //close()
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void handle(Directory dir, WatchEvent<?> event) {
+        WatchEvent.Kind<?> kind = event.kind();
+        if (kind == OVERFLOW) {
+            resync(dir);
+            return;
+        }
+        Path child = Paths.get(dir.getPath()).resolve((Path) event.context());
+        String childPath = child.toString();
+        if (kind == ENTRY_DELETE) {
+            unregisterAll(dir.removeSubNode(childPath));
+            return;
+        }
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (IOException e) {
+            //已经被删除, 稍后会收到删除事件
+            return;
+        }
+        sync(dir, childPath, attrs);
+    }
+
+    //把一个子项的当前属性同步到树上: 文件更新大小, 已有的目录保持不变, 新出现或类型变了的子项重新加入
+    private void sync(Directory dir, String childPath, BasicFileAttributes attrs) {
+        long lastModified = attrs.lastModifiedTime().toMillis();
+        FileSystemNode existing = dir.getSubNode(childPath);
+        if (existing instanceof File && !attrs.isDirectory()) {
+            ((File) existing).update(attrs.size(), lastModified);
+            return;
+        }
+        if (existing instanceof Directory && attrs.isDirectory()) {
+            //目录内容的变化由该目录自己的事件处理
+            return;
+        }
+        //新建, 或者同名的节点类型变了
+        unregisterAll(dir.removeSubNode(childPath));
+        if (attrs.isDirectory()) {
+            Directory subtree = new Directory(childPath, lastModified);
+            register(subtree);
+            populate(subtree);
+            dir.addSubNode(subtree);
+        } else {
+            dir.addSubNode(new File(childPath, attrs.size(), lastModified));
+        }
+    }
+
+    /**
+     * 事件溢出后重新列出dir的直接子项: 新出现的加入(新目录完整构建并注册), 消失的删除, 文件更新大小。
+     * 已有的子目录及其监听保持不变; Linux上inotify队列溢出时每个WatchKey都会收到OVERFLOW,
+     * 各目录只处理自己这一层, 整棵树合起来相当于一次全量扫描, 不会重复重建子树
+     * @param dir
+     */
+    private void resync(Directory dir) {
+        Set<String> seen = new HashSet<>();
+        try (DirectoryStream<Path> children = Files.newDirectoryStream(Paths.get(dir.getPath()))) {
+            for (Path child : children) {
+                BasicFileAttributes attrs;
+                try {
+                    attrs = Files.readAttributes(child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                } catch (IOException e) {
+                    //已经被删除
+                    continue;
+                }
+                seen.add(child.toString());
+                sync(dir, child.toString(), attrs);
+            }
+        } catch (IOException e) {
+            //目录已不存在, 等待父目录的删除事件
+            return;
+        }
+        for (FileSystemNode node : new ArrayList<>(dir.getSubNodes())) {
+            if (!seen.contains(node.getPath())) {
+                unregisterAll(dir.removeSubNode(node.getPath()));
+            }
+        }
+    }
+
+    /**
+     * 列出dir的子项加入树中, 子目录先注册监听再递归列出: 注册之前的变化会被列出, 注册之后的变化会产生事件,
+     * 两者重叠的部分在handle()中按先删后加处理, 不会丢失也不会重复计数
+     * @param dir 已经注册了监听的目录
+     */
+    private void populate(Directory dir) {
+        try (DirectoryStream<Path> children = Files.newDirectoryStream(Paths.get(dir.getPath()))) {
+            for (Path child : children) {
+                BasicFileAttributes attrs;
+                try {
+                    attrs = Files.readAttributes(child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                } catch (IOException e) {
+                    //已经被删除
+                    continue;
+                }
+                long lastModified = attrs.lastModifiedTime().toMillis();
+                if (attrs.isDirectory()) {
+                    Directory subtree = new Directory(child.toString(), lastModified);
+                    register(subtree);
+                    populate(subtree);
+                    dir.addSubNode(subtree);
+                } else {
+                    dir.addSubNode(new File(child.toString(), attrs.size(), lastModified));
+                }
+            }
+        } catch (IOException e) {
+            //目录已不存在或无权限, 等待父目录的删除事件
+        }
+    }
+
+    private void register(Directory dir) {
+        try {
+            WatchKey key = Paths.get(dir.getPath()).register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+            directories.put(key, dir);
+            keys.put(dir, key);
+        } catch (IOException e) {
+            //目录已被删除或无权限
+        }
+    }
+
+    private void registerAll(Directory dir) {
+        register(dir);
+        for (FileSystemNode node : dir.getSubNodes()) {
+            if (node instanceof Directory) {
+                registerAll((Directory) node);
+            }
+        }
+    }
+
+    private void unregisterAll(FileSystemNode node) {
+        if (!(node instanceof Directory)) {
+            return;
+        }
+        Directory dir = (Directory) node;
+        WatchKey key = keys.remove(dir);
+        if (key != null) {
+            key.cancel();
+            directories.remove(key);
+        }
+        for (FileSystemNode child : dir.getSubNodes()) {
+            unregisterAll(child);
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Path base = Files.createTempDirectory("fs-watcher");
+        Files.write(base.resolve("a.txt"), new byte[100]);
+        Demo demo = new Demo(base.toString());
+        Directory root = demo.buildOrganizationNio();
+        System.out.println("initial: files=" + root.countNumOfFiles() + ", size=" + root.countSizeOfFiles());
+
+        try (FileSystemWatcher watcher = demo.startLiveSync(root)) {
+            Directory watched = watcher.getRoot();
+            Path sub = Files.createDirectory(base.resolve("sub"));
+            Files.write(sub.resolve("b.txt"), new byte[50]);
+            Files.write(base.resolve("a.txt"), new byte[10], StandardOpenOption.APPEND);
+            Thread.sleep(1000);
+            System.out.println("after changes: files=" + watched.countNumOfFiles()
+                    + ", size=" + watched.countSizeOfFiles() + ", recount=" + watched.recountSizeOfFiles());
+
+            Files.delete(sub.resolve("b.txt"));
+            Files.delete(sub);
+            Thread.sleep(1000);
+            System.out.println("after delete: files=" + watched.countNumOfFiles()
+                    + ", size=" + watched.countSizeOfFiles());
+        }
+        Files.delete(base.resolve("a.txt"));
+        Files.delete(base);
+    }
+}
@@ -0,0 +1,97 @@
+package com.whl.designPatterns.combinationMode.fileSystem;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * @author whl
+ * @version V1.0
+ * @Title: 基于NIO的目录树构建
+ * @Description: 用Files.walkFileTree遍历, 遍历时每个子项的BasicFileAttributes只读取一次,
+ * 类型、大小与修改时间直接保存在File/Directory节点中, 之后countSizeOfFiles()不再产生系统调用。
+ * 原来的做法是构建时isDirectory()一次, 每次统计大小时exists()、length()各一次。
+ * 目录在postVisitDirectory时才挂到父目录上, 子树的缓存计数只向上累加一次。
+ * 不跟随符号链接, 避免链接成环时无限遍历; 符号链接作为文件记录, 大小是链接本身的大小。
+ */
+public class NioTreeBuilder {
+
+    public Directory build(String rootPath) {
+        Path root = Paths.get(rootPath);
+        Deque<Directory> stack = new ArrayDeque<>();
+        Directory[] result = new Directory[1];
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    long lastModified = attrs.lastModifiedTime().toMillis();
+                    Directory directory = stack.isEmpty()
+                            ? new Directory(rootPath, lastModified)
+                            : new Directory(dir.toString(), lastModified);
+                    if (stack.isEmpty()) {
+                        result[0] = directory;
+                    }
+                    stack.push(directory);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (!stack.isEmpty()) {
+                        stack.peek().addSubNode(new File(file.toString(), attrs.size(),
+                                attrs.lastModifiedTime().toMillis()));
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    //无权限打开的目录当作空目录, 已被删除的子项直接跳过
+                    if (!stack.isEmpty() && Files.isDirectory(file, LinkOption.NOFOLLOW_LINKS)) {
+                        stack.peek().addSubNode(new Directory(file.toString()));
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException e) {
+                    Directory directory = stack.pop();
+                    if (!stack.isEmpty()) {
+                        stack.peek().addSubNode(directory);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (result[0] == null) {
+            throw new IllegalArgumentException("Not a readable directory: " + rootPath);
+        }
+        return result[0];
+    }
+
+    public static void main(String[] args) {
+        String path = args.length > 0 ? args[0] : System.getProperty("java.home");
+        Demo demo = new Demo(path);
+
+        long start = System.nanoTime();
+        Directory legacy = demo.buildOrganization();
+        long legacyMillis = (System.nanoTime() - start) / 1_000_000;
+
+        start = System.nanoTime();
+        Directory nio = demo.buildOrganizationNio();
+        long nioMillis = (System.nanoTime() - start) / 1_000_000;
+
+        System.out.println("legacy build: " + legacyMillis + "ms, files: " + demo.countNumOfFiles(legacy));
+        System.out.println("nio build: " + nioMillis + "ms, files: " + demo.countNumOfFiles(nio));
+    }
+}
@@ -0,0 +1,95 @@
+package com.whl.designPatterns.combinationMode.fileSystem;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * @author whl
+ * @version V1.0
+ * @Title: 并行构建目录树
+ * @Description: 每个目录是一个ForkJoin任务: 列出子项后, 子目录fork成子任务, 全部完成后再按列出的顺序把子节点加入subNodes,
+ * 由work-stealing的ForkJoinPool在多个线程间分摊, 得到与Demo.buildOrganization()相同的树。
+ * 子树构建完成之后才挂到父目录上, 缓存的计数只向上累加一次, 各任务之间不会争用祖先目录的计数;
+ * 每个Directory只被构建它的那个任务修改, 不需要加锁; invokeAll的join保证子任务的结果对父任务可见。
+ * 与串行版本一样用java.io.File的listFiles()与isDirectory()判断子项, 跟随符号链接;
+ * 只想读取一次属性或不跟随链接时使用NioTreeBuilder。
+ */
+public class ParallelTreeBuilder {
+    private final int parallelism;
+
+    public ParallelTreeBuilder() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param parallelism 并行度, 扫描网络文件系统或机械硬盘时可以设得比核数大, 以便重叠IO等待
+     */
+    public ParallelTreeBuilder(int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+        }
+        this.parallelism = parallelism;
+    }
+
+    public Directory build(String rootPath) {
+        Directory root = new Directory(rootPath);
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new BuildTask(root));
+        } finally {
+            pool.shutdown();
+        }
+        return root;
+    }
+
+    @SuppressWarnings("serial")
+    private static class BuildTask extends RecursiveAction {
+        private final Directory dir;
+
+        BuildTask(Directory dir) {
+            this.dir = dir;
+        }
+
+        @Override
+        protected void compute() {
+            List<FileSystemNode> subNodes = new ArrayList<>();
+            List<BuildTask> subTasks = new ArrayList<>();
+            java.io.File[] children = new java.io.File(dir.getPath()).listFiles();
+            //无权限或目录已被删除时listFiles()返回null, 当作空目录
+            if (children != null) {
+                for (java.io.File child : children) {
+                    if (child.isDirectory()) {
+                        Directory directory = new Directory(child.getPath());
+                        subNodes.add(directory);
+                        subTasks.add(new BuildTask(directory));
+                    } else {
+                        subNodes.add(new File(child.getPath()));
+                    }
+                }
+            }
+            invokeAll(subTasks);
+            for (FileSystemNode subNode : subNodes) {
+                dir.addSubNode(subNode);
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        String path = args.length > 0 ? args[0] : System.getProperty("java.home");
+        int parallelism = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors() * 2;
+
+        Demo demo = new Demo(path);
+        long start = System.nanoTime();
+        Directory serial = demo.buildOrganization();
+        long serialMillis = (System.nanoTime() - start) / 1_000_000;
+
+        start = System.nanoTime();
+        Directory parallel = new ParallelTreeBuilder(parallelism).build(path);
+        long parallelMillis = (System.nanoTime() - start) / 1_000_000;
+
+        System.out.println("serial: " + serialMillis + "ms, files: " + demo.countNumOfFiles(serial));
+        System.out.println("parallel(" + parallelism + "): " + parallelMillis + "ms, files: " + demo.countNumOfFiles(parallel));
+    }
+}
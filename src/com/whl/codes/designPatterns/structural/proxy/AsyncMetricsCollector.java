@@ -0,0 +1,83 @@
+package com.whl.codes.designPatterns.structural.proxy;
+
+import com.whl.codes.designPatterns.structural.proxy.metrics.MetricsRingBuffer;
+import com.whl.codes.designPatterns.structural.proxy.metrics.MetricsStorage;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * @author whl
+ * @version V1.0
+ * @Title: 异步的MetricsCollector
+ * @Description: recordRequest()采样后只把请求数据(均为基本类型)写入预分配的环形队列, 由后台线程批量取出后再做聚合,
+ * 请求线程上只剩一次CAS。队列满时丢弃并计数, 统计永远不会反压到被代理的调用方。
+ */
+public class AsyncMetricsCollector extends MetricsCollector {
+    private static final int DEFAULT_CAPACITY = 1 << 16;
+    private static final int BATCH_SIZE = 1024;
+    //队列为空时消费者的休眠时间
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final MetricsRingBuffer ringBuffer;
+    private final Thread consumer;
+    private volatile boolean running = true;
+
+    public AsyncMetricsCollector() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public AsyncMetricsCollector(int capacity) {
+        this.ringBuffer = new MetricsRingBuffer(capacity);
+        this.consumer = startConsumer();
+    }
+
+    public AsyncMetricsCollector(int capacity, MetricsStorage storage, int flushIntervalSeconds) {
+        super(storage, flushIntervalSeconds);
+        this.ringBuffer = new MetricsRingBuffer(capacity);
+        this.consumer = startConsumer();
+    }
+
+    private Thread startConsumer() {
+        Thread consumer = new Thread(this::consume, "metrics-consumer");
+        consumer.setDaemon(true);
+        consumer.start();
+        return consumer;
+    }
+
+    @Override
+    protected void record(int apiId, long startTimestamp, long responseTimeNanos, int weight) {
+        ringBuffer.offer(apiId, startTimestamp, responseTimeNanos, weight);
+    }
+
+    public long getDroppedCount() {
+        return ringBuffer.getDroppedCount();
+    }
+
+    /**
+     * 停止消费者线程, 停止前取出队列中剩余的事件
+     */
+    @Override
+    public void shutdown() {
+        running = false;
+        LockSupport.unpark(consumer);
+        try {
+            consumer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        super.shutdown();
+    }
+
+    private void consume() {
+        MetricsRingBuffer.EventHandler handler = this::aggregate;
+        while (running) {
+            if (ringBuffer.drain(handler, BATCH_SIZE) == 0) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+        while (ringBuffer.drain(handler, BATCH_SIZE) > 0) {
+            //取完剩余事件
+        }
+    }
+}
@@ -1,13 +1,289 @@
 package com.whl.codes.designPatterns.structural.proxy;
 
+import com.whl.codes.designPatterns.structural.proxy.metrics.ApiMetrics;
+import com.whl.codes.designPatterns.structural.proxy.metrics.ApiNameRegistry;
+import com.whl.codes.designPatterns.structural.proxy.metrics.ApiSampler;
+import com.whl.codes.designPatterns.structural.proxy.metrics.ApiStat;
+import com.whl.codes.designPatterns.structural.proxy.metrics.MetricsStorage;
+import com.whl.codes.designPatterns.structural.proxy.metrics.SamplingPolicy;
+import com.whl.codes.metrics.LatencySnapshot;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
 /**
  * @author whl
  * @version V1.0
  * @Title:
- * @Description:
+ * @Description: 在内存中按接口聚合请求数据, 每个接口一个滑动窗口统计, 记录过程无锁。
+ * 接口名通过ApiNameRegistry映射为int id, 统计数据按id存放在数组中, 记录时不需要查找Map, 也不产生对象。
+ * 可以按接口配置采样策略(SamplingPolicy), 在高负载下限制统计开销, 同时保留所有慢请求。
+ * 配置了MetricsStorage时, 后台线程每隔flushIntervalSeconds秒把刚结束的间隔的聚合结果写入存储, 用于查询历史数据。
  */
 public class MetricsCollector {
+    //刷盘时多等待的秒数, 让迟到的记录(如异步队列中的事件)先落入窗口
+    private static final int FLUSH_DELAY_SECONDS = 1;
+
+    private final ApiNameRegistry registry = ApiNameRegistry.getInstance();
+    private volatile ApiMetrics[] apiMetrics = new ApiMetrics[16];
+    //没有采样器的接口记录每一次请求
+    private volatile ApiSampler[] samplers = new ApiSampler[0];
+    private volatile SamplingPolicy defaultSamplingPolicy;
+
+    private final MetricsStorage storage;
+    private final int flushIntervalSeconds;
+    private final ScheduledExecutorService flusher;
+    private final Object flushLock = new Object();
+    //下一个待刷盘间隔的开始秒, 在flushLock中访问
+    private long nextFlushSecond;
+
+    public MetricsCollector() {
+        this.storage = null;
+        this.flushIntervalSeconds = 0;
+        this.flusher = null;
+    }
+
+    public MetricsCollector(MetricsStorage storage, int flushIntervalSeconds) {
+        if (flushIntervalSeconds <= 0 || flushIntervalSeconds > ApiMetrics.MAX_WINDOW_SECONDS) {
+            throw new IllegalArgumentException("flushIntervalSeconds must be in (0, "
+                    + ApiMetrics.MAX_WINDOW_SECONDS + "]: " + flushIntervalSeconds);
+        }
+        //每次刷盘的聚合结果只能写入存储的一个间隔, 否则会被合并到错误的间隔中
+        if (storage.getIntervalMillis() % (flushIntervalSeconds * 1000L) != 0) {
+            throw new IllegalArgumentException("flushIntervalSeconds " + flushIntervalSeconds
+                    + " must divide the storage interval of " + storage.getIntervalMillis() + "ms");
+        }
+        this.storage = storage;
+        this.flushIntervalSeconds = flushIntervalSeconds;
+        long nowSecond = System.currentTimeMillis() / 1000;
+        this.nextFlushSecond = (nowSecond / flushIntervalSeconds + 1) * flushIntervalSeconds;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metrics-flusher");
+            t.setDaemon(true);
+            return t;
+        });
+        this.flusher.scheduleAtFixedRate(this::flush, flushIntervalSeconds, flushIntervalSeconds, TimeUnit.SECONDS);
+    }
+
     public void recordRequest(RequestInfo requestInfo) {
-        //TODO: 记录接口请求参数
+        if (requestInfo == null || requestInfo.getApiName() == null) {
+            return;
+        }
+        //RequestInfo中的耗时单位为毫秒
+        recordRequest(registry.register(requestInfo.getApiName()), requestInfo.getStartTimestamp(),
+                requestInfo.getResponseTime() * 1000000);
+    }
+
+    /**
+     * 不产生对象的记录接口
+     * @param apiId ApiNameRegistry中注册的id
+     * @param startTimestamp 请求开始时间, 毫秒, 用于划分统计窗口
+     * @param responseTimeNanos 耗时, 纳秒
+     */
+    public void recordRequest(int apiId, long startTimestamp, long responseTimeNanos) {
+        int weight = 1;
+        ApiSampler[] currentSamplers = samplers;
+        ApiSampler sampler = apiId < currentSamplers.length ? currentSamplers[apiId] : null;
+        if (sampler == null && defaultSamplingPolicy != null) {
+            sampler = createSampler(apiId, defaultSamplingPolicy, false);
+        }
+        if (sampler != null) {
+            weight = sampler.sample(startTimestamp, responseTimeNanos);
+            if (weight == 0) {
+                return;
+            }
+        }
+        record(apiId, startTimestamp, responseTimeNanos, weight);
+    }
+
+    /**
+     * 异步接口的记录: 在stage完成(包括异常完成)时才计算耗时并记录, 不占用额外线程
+     * @param apiId
+     * @param startTimestamp 请求开始时间, 毫秒
+     * @param startNanos 请求开始时的System.nanoTime()
+     * @param stage 被代理方法返回的CompletionStage
+     * @return 原样返回stage
+     */
+    public CompletionStage<?> recordOnCompletion(int apiId, long startTimestamp, long startNanos,
+                                                 CompletionStage<?> stage) {
+        if (stage == null) {
+            recordRequest(apiId, startTimestamp, System.nanoTime() - startNanos);
+            return null;
+        }
+        stage.whenComplete(new CompletionRecorder(apiId, startTimestamp, startNanos));
+        return stage;
+    }
+
+    /**
+     * 为接口设置采样策略, 覆盖默认策略
+     * @param apiName
+     * @param policy
+     */
+    public void setSamplingPolicy(String apiName, SamplingPolicy policy) {
+        createSampler(registry.register(apiName), policy, true);
+    }
+
+    /**
+     * 为没有单独设置采样策略的接口设置默认策略: 这些接口在下一次记录请求时按当时的默认策略创建采样器,
+     * 已经按之前的默认策略创建了采样器的接口不受影响
+     * @param policy
+     */
+    public void setDefaultSamplingPolicy(SamplingPolicy policy) {
+        this.defaultSamplingPolicy = policy;
+    }
+
+    protected void record(int apiId, long startTimestamp, long responseTimeNanos, int weight) {
+        aggregate(apiId, startTimestamp, responseTimeNanos, weight);
+    }
+
+    protected void aggregate(int apiId, long startTimestamp, long responseTimeNanos, int weight) {
+        ApiMetrics[] current = apiMetrics;
+        ApiMetrics metrics = apiId < current.length ? current[apiId] : null;
+        if (metrics == null) {
+            metrics = createMetrics(apiId);
+        }
+        metrics.record(startTimestamp, responseTimeNanos / 1000, weight);
+    }
+
+    private synchronized ApiSampler createSampler(int apiId, SamplingPolicy policy, boolean replace) {
+        ApiSampler[] current = samplers;
+        if (apiId >= current.length) {
+            current = Arrays.copyOf(current, Math.max(Math.max(current.length * 2, 16), apiId + 1));
+        }
+        if (current[apiId] == null || replace) {
+            current[apiId] = new ApiSampler(policy);
+        }
+        samplers = current;
+        return current[apiId];
+    }
+
+    private synchronized ApiMetrics createMetrics(int apiId) {
+        ApiMetrics[] current = apiMetrics;
+        if (apiId >= current.length) {
+            current = Arrays.copyOf(current, Math.max(current.length * 2, apiId + 1));
+        }
+        if (current[apiId] == null) {
+            current[apiId] = new ApiMetrics(registry.getApiName(apiId));
+        }
+        apiMetrics = current;
+        return current[apiId];
+    }
+
+    /**
+     * 获取接口最近windowSeconds秒的统计信息
+     * @param apiName
+     * @param windowSeconds 不超过60秒
+     * @return 没有记录过该接口时返回次数为0的统计
+     */
+    public ApiStat getStat(String apiName, int windowSeconds) {
+        //只读查询不注册接口名, 避免未知的名字永久占用id
+        int apiId = registry.getId(apiName);
+        ApiMetrics[] current = apiMetrics;
+        if (apiId < 0 || apiId >= current.length || current[apiId] == null) {
+            return ApiStat.of(apiName, new LatencySnapshot(), windowSeconds * 1000L);
+        }
+        return ApiStat.of(apiName, current[apiId].snapshot(System.currentTimeMillis(), windowSeconds),
+                windowSeconds * 1000L);
+    }
+
+    public Map<String, ApiStat> getStats(int windowSeconds) {
+        long now = System.currentTimeMillis();
+        Map<String, ApiStat> stats = new LinkedHashMap<>();
+        for (ApiMetrics metrics : apiMetrics) {
+            if (metrics != null) {
+                stats.put(metrics.getApiName(),
+                        ApiStat.of(metrics.getApiName(), metrics.snapshot(now, windowSeconds), windowSeconds * 1000L));
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * 从存储中查询[fromTs, toTs)的历史统计, 需要配置MetricsStorage
+     * @param apiName
+     * @param fromTs 毫秒
+     * @param toTs 毫秒
+     * @return
+     */
+    public ApiStat getStats(String apiName, long fromTs, long toTs) {
+        if (storage == null) {
+            throw new IllegalStateException("No MetricsStorage configured");
+        }
+        return ApiStat.of(apiName, storage.getAggregate(apiName, fromTs, toTs), toTs - fromTs);
+    }
+
+    /**
+     * 停止刷盘线程, 停止前写入已经结束的间隔
+     */
+    public void shutdown() {
+        if (flusher != null) {
+            flusher.shutdown();
+            try {
+                flusher.awaitTermination(flushIntervalSeconds, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            flush();
+        }
+    }
+
+    //每次异步调用只分配这一个回调对象
+    private class CompletionRecorder implements BiConsumer<Object, Throwable> {
+        private final int apiId;
+        private final long startTimestamp;
+        private final long startNanos;
+
+        CompletionRecorder(int apiId, long startTimestamp, long startNanos) {
+            this.apiId = apiId;
+            this.startTimestamp = startTimestamp;
+            this.startNanos = startNanos;
+        }
+
+        @Override
+        public void accept(Object result, Throwable error) {
+            recordRequest(apiId, startTimestamp, System.nanoTime() - startNanos);
+        }
+    }
+
+    private void flush() {
+        synchronized (flushLock) {
+            long completedSecond = System.currentTimeMillis() / 1000 - FLUSH_DELAY_SECONDS;
+            //超出滑动窗口的间隔已经被覆盖, 直接跳过
+            long oldestSecond = completedSecond - ApiMetrics.MAX_WINDOW_SECONDS;
+            while (nextFlushSecond + flushIntervalSeconds <= completedSecond) {
+                long fromSecond = nextFlushSecond;
+                nextFlushSecond += flushIntervalSeconds;
+                if (fromSecond < oldestSecond) {
+                    continue;
+                }
+                for (ApiMetrics metrics : apiMetrics) {
+                    if (metrics == null) {
+                        continue;
+                    }
+                    LatencySnapshot snapshot = metrics.snapshot(fromSecond, fromSecond + flushIntervalSeconds);
+                    if (snapshot.getCount() > 0) {
+                        //异常不能抛出定时任务, 否则之后的刷盘全部停止; 一个接口写入失败也不影响其他接口
+                        try {
+                            storage.saveAggregate(metrics.getApiName(), fromSecond * 1000, snapshot);
+                        } catch (RuntimeException e) {
+                            System.err.println("Metrics flush of " + metrics.getApiName() + " failed: " + e);
+                        }
+                    }
+                }
+            }
+            try {
+                storage.purgeExpired(completedSecond * 1000);
+            } catch (RuntimeException e) {
+                //清理失败不影响刷盘, 下次刷盘时重试
+                System.err.println("Metrics purge failed: " + e);
+            }
+        }
     }
 }
+
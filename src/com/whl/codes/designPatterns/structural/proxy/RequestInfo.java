@@ -16,4 +16,16 @@ public class RequestInfo {
         this.startTimestamp = startTimestamp;
         this.responseTime = responseTime;
     }
+
+    public String getApiName() {
+        return apiName;
+    }
+
+    public long getStartTimestamp() {
+        return startTimestamp;
+    }
+
+    public long getResponseTime() {
+        return responseTime;
+    }
 }
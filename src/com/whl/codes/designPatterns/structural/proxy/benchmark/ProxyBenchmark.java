@@ -0,0 +1,44 @@
+package com.whl.codes.designPatterns.structural.proxy.benchmark;
+
+import com.whl.codes.benchmark.ThroughputBenchmark;
+import com.whl.codes.designPatterns.structural.proxy.IUserController;
+import com.whl.codes.designPatterns.structural.proxy.UserController;
+import com.whl.codes.designPatterns.structural.proxy.dynamicProxy.GeneratedMetricsProxyFactory;
+import com.whl.codes.designPatterns.structural.proxy.dynamicProxy.MetricsCollectorProxy;
+import com.whl.codes.designPatterns.structural.proxy.staticProxy.UserControllerProxy;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * @author whl
+ * @version V1.0
+ * @Title: 代理方式的单次调用开销对比
+ * @Description: 直接调用 / 静态代理 / JDK动态代理 / 生成字节码的代理, 分别调用UserController.login()。
+ * 运行方式: java ProxyBenchmark [预热毫秒数] [测试毫秒数]
+ */
+public class ProxyBenchmark {
+    private static final int[] THREADS = {1, 4};
+
+    public static void main(String[] args) {
+        long warmupMillis = args.length > 0 ? Long.parseLong(args[0]) : 1000;
+        long measureMillis = args.length > 1 ? Long.parseLong(args[1]) : 2000;
+
+        Map<String, IUserController> controllers = new LinkedHashMap<>();
+        controllers.put("direct", new UserController());
+        controllers.put("staticProxy", new UserControllerProxy(new UserController()));
+        controllers.put("jdkProxy", (IUserController) new MetricsCollectorProxy().createProxy(new UserController()));
+        controllers.put("generatedProxy",
+                new GeneratedMetricsProxyFactory().createProxy(IUserController.class, new UserController()));
+
+        ThroughputBenchmark.printHeader();
+        for (Map.Entry<String, IUserController> entry : controllers.entrySet()) {
+            IUserController controller = entry.getValue();
+            for (int threads : THREADS) {
+                ThroughputBenchmark.run(entry.getKey(), threads,
+                        () -> () -> controller.login("155", "whl") == null ? 0 : 1,
+                        warmupMillis, measureMillis).print();
+            }
+        }
+    }
+}
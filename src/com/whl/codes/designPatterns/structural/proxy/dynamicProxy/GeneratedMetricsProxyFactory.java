@@ -0,0 +1,270 @@
+package com.whl.codes.designPatterns.structural.proxy.dynamicProxy;
+
+import com.whl.codes.designPatterns.structural.proxy.IUserController;
+import com.whl.codes.designPatterns.structural.proxy.MetricsCollector;
+import com.whl.codes.designPatterns.structural.proxy.UserController;
+import com.whl.codes.designPatterns.structural.proxy.metrics.ApiNameRegistry;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @author whl
+ * @version V1.0
+ * @Title: 生成字节码的动态代理类
+ * @Description: JDK动态代理每次调用都要经过InvocationHandler与Method.invoke, 参数需要装箱并放入Object[]。
+ * 这里为接口直接生成一个实现类(hidden class), 每个方法的字节码与手写的静态代理相同:
+ * 记录开始时间 -> invokeinterface调用被代理对象 -> recordRequest(接口名id, 开始时间, 耗时) -> 返回。
+ * 返回CompletionStage的方法在stage完成时才记录耗时。接口名id在生成时就写入常量池, 生成的类按(接口, 被代理类)缓存, 同一组合只生成一次。
+ * 被代理的接口必须是public的, 并且对本类的类加载器可见。
+ */
+public class GeneratedMetricsProxyFactory {
+    private static final String PROXY_CLASS_NAME =
+            GeneratedMetricsProxyFactory.class.getPackage().getName().replace('.', '/') + "/GeneratedMetricsProxy";
+    private static final String COLLECTOR_NAME = internalName(MetricsCollector.class);
+    private static final String TARGET_FIELD = "target";
+    private static final String COLLECTOR_FIELD = "metricsCollector";
+
+    private static final int ALOAD_0 = 0x2a;
+    private static final int ALOAD_1 = 0x2b;
+    private static final int ALOAD_2 = 0x2c;
+    private static final int LLOAD = 0x16;
+    private static final int LSTORE = 0x37;
+    private static final int LSUB = 0x65;
+    private static final int LDC_W = 0x13;
+    private static final int RETURN = 0xb1;
+    private static final int GETFIELD = 0xb4;
+    private static final int PUTFIELD = 0xb5;
+    private static final int INVOKEVIRTUAL = 0xb6;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int INVOKESTATIC = 0xb8;
+    private static final int INVOKEINTERFACE = 0xb9;
+    private static final int CHECKCAST = 0xc0;
+
+    private static final ConcurrentHashMap<List<Class<?>>, MethodHandle> constructors = new ConcurrentHashMap<>();
+
+    private final MetricsCollector metricsCollector;
+
+    public GeneratedMetricsProxyFactory() {
+        this(new MetricsCollector());
+    }
+
+    public GeneratedMetricsProxyFactory(MetricsCollector metricsCollector) {
+        this.metricsCollector = metricsCollector;
+    }
+
+    public <T> T createProxy(Class<T> interfaceClass, T proxiedObject) {
+        if (!interfaceClass.isInterface() || !Modifier.isPublic(interfaceClass.getModifiers())) {
+            throw new IllegalArgumentException(interfaceClass.getName() + " is not a public interface");
+        }
+        MethodHandle constructor = constructors.computeIfAbsent(
+                Arrays.asList(interfaceClass, proxiedObject.getClass()),
+                key -> defineProxyClass(interfaceClass, proxiedObject.getClass()));
+        try {
+            return interfaceClass.cast(constructor.invoke(proxiedObject, metricsCollector));
+        } catch (Throwable e) {
+            throw new IllegalStateException("Cannot instantiate proxy for " + interfaceClass.getName(), e);
+        }
+    }
+
+    private static MethodHandle defineProxyClass(Class<?> interfaceClass, Class<?> targetClass) {
+        String interfaceName = internalName(interfaceClass);
+        String targetDescriptor = interfaceClass.descriptorString();
+        String collectorDescriptor = MetricsCollector.class.descriptorString();
+
+        ClassFileWriter writer = new ClassFileWriter(PROXY_CLASS_NAME, "java/lang/Object", interfaceName);
+        writer.addField(ClassFileWriter.ACC_PRIVATE | ClassFileWriter.ACC_FINAL, TARGET_FIELD, targetDescriptor);
+        writer.addField(ClassFileWriter.ACC_PRIVATE | ClassFileWriter.ACC_FINAL, COLLECTOR_FIELD, collectorDescriptor);
+
+        //构造方法: 保存被代理对象与MetricsCollector
+        Code init = new Code();
+        init.op(ALOAD_0).op(INVOKESPECIAL).u2(writer.methodRef("java/lang/Object", "<init>", "()V"));
+        init.op(ALOAD_0).op(ALOAD_1).op(PUTFIELD).u2(writer.fieldRef(PROXY_CLASS_NAME, TARGET_FIELD, targetDescriptor));
+        init.op(ALOAD_0).op(ALOAD_2).op(PUTFIELD).u2(writer.fieldRef(PROXY_CLASS_NAME, COLLECTOR_FIELD, collectorDescriptor));
+        init.op(RETURN);
+        writer.addMethod(ClassFileWriter.ACC_PUBLIC, "<init>", "(" + targetDescriptor + collectorDescriptor + ")V",
+                2, 3, init.toByteArray());
+
+        for (Method method : proxiedMethods(interfaceClass).values()) {
+            int apiId = ApiNameRegistry.getInstance().register(targetClass.getName() + ":" + method.getName());
+            addProxyMethod(writer, interfaceName, targetDescriptor, collectorDescriptor, method, apiId);
+        }
+
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(writer.toByteArray(), true);
+            return lookup.findConstructor(lookup.lookupClass(),
+                    MethodType.methodType(void.class, interfaceClass, MetricsCollector.class));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot define proxy class for " + interfaceClass.getName(), e);
+        }
+    }
+
+    private static void addProxyMethod(ClassFileWriter writer, String interfaceName, String targetDescriptor,
+                                       String collectorDescriptor, Method method, int apiId) {
+        String descriptor = MethodType.methodType(method.getReturnType(), method.getParameterTypes())
+                .toMethodDescriptorString();
+        int argumentSlots = 0;
+        for (Class<?> type : method.getParameterTypes()) {
+            argumentSlots += slotSize(type);
+        }
+        int timestampSlot = 1 + argumentSlots;
+        int nanosSlot = timestampSlot + 2;
+        int resultSlot = nanosSlot + 2;
+        Class<?> returnType = method.getReturnType();
+        if (resultSlot + slotSize(returnType) > 0xff) {
+            throw new IllegalArgumentException("Too many parameters: " + method);
+        }
+
+        Code code = new Code();
+        code.op(INVOKESTATIC).u2(writer.methodRef("java/lang/System", "currentTimeMillis", "()J"));
+        code.op(LSTORE).u1(timestampSlot);
+        code.op(INVOKESTATIC).u2(writer.methodRef("java/lang/System", "nanoTime", "()J"));
+        code.op(LSTORE).u1(nanosSlot);
+        //调用被代理对象
+        code.op(ALOAD_0).op(GETFIELD).u2(writer.fieldRef(PROXY_CLASS_NAME, TARGET_FIELD, targetDescriptor));
+        int slot = 1;
+        for (Class<?> type : method.getParameterTypes()) {
+            code.op(loadOpcode(type)).u1(slot);
+            slot += slotSize(type);
+        }
+        code.op(INVOKEINTERFACE).u2(writer.interfaceMethodRef(interfaceName, method.getName(), descriptor))
+                .u1(1 + argumentSlots).u1(0);
+        if (returnType != void.class) {
+            code.op(storeOpcode(returnType)).u1(resultSlot);
+        }
+        if (CompletionStage.class.isAssignableFrom(returnType)) {
+            //return (R) metricsCollector.recordOnCompletion(apiId, startTimestamp, startNanos, result)
+            code.op(ALOAD_0).op(GETFIELD).u2(writer.fieldRef(PROXY_CLASS_NAME, COLLECTOR_FIELD, collectorDescriptor));
+            code.op(LDC_W).u2(writer.integer(apiId));
+            code.op(LLOAD).u1(timestampSlot);
+            code.op(LLOAD).u1(nanosSlot);
+            code.op(loadOpcode(returnType)).u1(resultSlot);
+            code.op(INVOKEVIRTUAL).u2(writer.methodRef(COLLECTOR_NAME, "recordOnCompletion",
+                    "(IJJLjava/util/concurrent/CompletionStage;)Ljava/util/concurrent/CompletionStage;"));
+            code.op(CHECKCAST).u2(writer.classRef(internalName(returnType)));
+            code.op(returnOpcode(returnType));
+            writer.addMethod(ClassFileWriter.ACC_PUBLIC, method.getName(), descriptor,
+                    Math.max(1 + argumentSlots, 7), resultSlot + 1, code.toByteArray());
+            return;
+        }
+        //metricsCollector.recordRequest(apiId, startTimestamp, System.nanoTime() - startNanos)
+        code.op(ALOAD_0).op(GETFIELD).u2(writer.fieldRef(PROXY_CLASS_NAME, COLLECTOR_FIELD, collectorDescriptor));
+        code.op(LDC_W).u2(writer.integer(apiId));
+        code.op(LLOAD).u1(timestampSlot);
+        code.op(INVOKESTATIC).u2(writer.methodRef("java/lang/System", "nanoTime", "()J"));
+        code.op(LLOAD).u1(nanosSlot);
+        code.op(LSUB);
+        code.op(INVOKEVIRTUAL).u2(writer.methodRef(COLLECTOR_NAME, "recordRequest", "(IJJ)V"));
+        if (returnType == void.class) {
+            code.op(RETURN);
+        } else {
+            code.op(loadOpcode(returnType)).u1(resultSlot);
+            code.op(returnOpcode(returnType));
+        }
+        //collector + apiId + startTimestamp + nanoTime + startNanos
+        int maxStack = Math.max(1 + argumentSlots, 8);
+        writer.addMethod(ClassFileWriter.ACC_PUBLIC, method.getName(), descriptor,
+                maxStack, resultSlot + slotSize(returnType), code.toByteArray());
+    }
+
+    //接口(含父接口)中所有需要实现的方法, 按方法名+描述符去重
+    private static Map<String, Method> proxiedMethods(Class<?> interfaceClass) {
+        Map<String, Method> methods = new LinkedHashMap<>();
+        for (Method method : interfaceClass.getMethods()) {
+            if (Modifier.isStatic(method.getModifiers())) {
+                continue;
+            }
+            String key = method.getName() + MethodType.methodType(method.getReturnType(), method.getParameterTypes())
+                    .toMethodDescriptorString();
+            methods.putIfAbsent(key, method);
+        }
+        return methods;
+    }
+
+    private static String internalName(Class<?> clazz) {
+        return clazz.getName().replace('.', '/');
+    }
+
+    private static int slotSize(Class<?> type) {
+        if (type == void.class) {
+            return 0;
+        }
+        return type == long.class || type == double.class ? 2 : 1;
+    }
+
+    //iload/lload/fload/dload/aload
+    private static int loadOpcode(Class<?> type) {
+        return 0x15 + typeOffset(type);
+    }
+
+    //istore/lstore/fstore/dstore/astore
+    private static int storeOpcode(Class<?> type) {
+        return 0x36 + typeOffset(type);
+    }
+
+    //ireturn/lreturn/freturn/dreturn/areturn
+    private static int returnOpcode(Class<?> type) {
+        return 0xac + typeOffset(type);
+    }
+
+    private static int typeOffset(Class<?> type) {
+        if (!type.isPrimitive()) {
+            return 4;
+        }
+        if (type == long.class) {
+            return 1;
+        }
+        if (type == float.class) {
+            return 2;
+        }
+        if (type == double.class) {
+            return 3;
+        }
+        return 0;
+    }
+
+    private static class Code {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        Code op(int opcode) {
+            bytes.write(opcode);
+            return this;
+        }
+
+        Code u1(int value) {
+            bytes.write(value);
+            return this;
+        }
+
+        Code u2(int value) {
+            bytes.write(value >>> 8);
+            bytes.write(value);
+            return this;
+        }
+
+        byte[] toByteArray() {
+            return bytes.toByteArray();
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        MetricsCollector metricsCollector = new MetricsCollector();
+        GeneratedMetricsProxyFactory factory = new GeneratedMetricsProxyFactory(metricsCollector);
+        IUserController userController = factory.createProxy(IUserController.class, new UserController());
+        userController.login("155", "whl");
+        //统计窗口只包含已经结束的秒
+        Thread.sleep(1000);
+        System.out.println(userController.getClass().getName() + " -> "
+                + metricsCollector.getStat(UserController.class.getName() + ":login", 1));
+    }
+}
@@ -1,13 +1,15 @@
 package com.whl.codes.designPatterns.structural.proxy.dynamicProxy;
 
 import com.whl.codes.designPatterns.structural.proxy.MetricsCollector;
-import com.whl.codes.designPatterns.structural.proxy.RequestInfo;
 import com.whl.codes.designPatterns.structural.proxy.UserController;
 import com.whl.codes.designPatterns.structural.proxy.IUserController;
+import com.whl.codes.designPatterns.structural.proxy.metrics.ApiNameRegistry;
 
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author whl
@@ -19,7 +21,12 @@ public class MetricsCollectorProxy {
     private MetricsCollector metricsCollector;
 
     public MetricsCollectorProxy() {
-        this.metricsCollector = new MetricsCollector();
+        this(new MetricsCollector());
+    }
+
+    //可以传入AsyncMetricsCollector, 统计不占用请求线程
+    public MetricsCollectorProxy(MetricsCollector metricsCollector) {
+        this.metricsCollector = metricsCollector;
     }
 
     //传入参数为被代理类实例
@@ -31,6 +38,8 @@ public class MetricsCollectorProxy {
 
     private class DynamicProxyHandler implements InvocationHandler {
         private Object proxiedObject;//被代理类
+        //方法 -> 接口名id, 接口名只在第一次调用时拼接并注册
+        private final ConcurrentHashMap<Method, Integer> apiIds = new ConcurrentHashMap<>();
 
         public DynamicProxyHandler(Object proxiedObject) {
             this.proxiedObject = proxiedObject;
@@ -47,13 +56,26 @@ public class MetricsCollectorProxy {
         @Override
         public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
             long startTimestamp = System.currentTimeMillis();
+            long startNanos = System.nanoTime();
             Object result = method.invoke(proxiedObject, args);//方法返回值
-            long endTimeStamp = System.currentTimeMillis();
-            long responseTime = endTimeStamp - startTimestamp;
-            String apiName = proxiedObject.getClass().getName() + ":" + method.getName();
-            metricsCollector.recordRequest(new RequestInfo(apiName, responseTime, startTimestamp));
+            if (result instanceof CompletionStage) {
+                //异步接口在future完成时才记录耗时
+                return metricsCollector.recordOnCompletion(apiIdOf(method), startTimestamp, startNanos,
+                        (CompletionStage<?>) result);
+            }
+            long responseTime = System.nanoTime() - startNanos;
+            metricsCollector.recordRequest(apiIdOf(method), startTimestamp, responseTime);
             return result;
         }
+
+        private int apiIdOf(Method method) {
+            Integer apiId = apiIds.get(method);
+            if (apiId == null) {
+                apiId = apiIds.computeIfAbsent(method, m -> ApiNameRegistry.getInstance()
+                        .register(proxiedObject.getClass().getName() + ":" + m.getName()));
+            }
+            return apiId;
+        }
     }
 
     public static void main(String[] args) {
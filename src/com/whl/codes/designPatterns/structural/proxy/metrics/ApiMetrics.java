@@ -0,0 +1,115 @@
+package com.whl.codes.designPatterns.structural.proxy.metrics;
+
+import com.whl.codes.metrics.LatencyHistogram;
+import com.whl.codes.metrics.LatencySnapshot;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author whl
+ * @version V1.0
+ * @Title: 单个接口的滑动窗口统计
+ * @Description: 按秒划分的环形窗口, 每个格子保存这一秒的次数、总耗时、最大耗时与直方图。
+ * 记录时只定位到对应的格子做原子累加, 不加锁; 格子过期时由第一个发现的线程通过CAS抢到重置权。
+ * 查询时合并窗口内的格子, 开销只与窗口长度有关, 与请求量无关。
+ */
+public class ApiMetrics {
+    public static final int MAX_WINDOW_SECONDS = 60;
+    //多出两个格子: 一个是正在写入的当前秒, 一个是正在被重置的格子
+    private static final int SLOT_COUNT = MAX_WINDOW_SECONDS + 2;
+    private static final long RESETTING = -1;
+
+    private final String apiName;
+    private final Slot[] slots = new Slot[SLOT_COUNT];
+
+    public ApiMetrics(String apiName) {
+        this.apiName = apiName;
+        for (int i = 0; i < SLOT_COUNT; i++) {
+            slots[i] = new Slot();
+        }
+    }
+
+    public String getApiName() {
+        return apiName;
+    }
+
+    /**
+     * @param timestamp 请求开始时间, 毫秒
+     * @param responseTime 耗时, 微秒
+     * @param weight 采样时一条记录代表的请求数
+     */
+    public void record(long timestamp, long responseTime, int weight) {
+        Slot slot = slotOf(timestamp / 1000);
+        if (slot == null) {
+            //早于窗口的记录直接丢弃
+            return;
+        }
+        slot.count.add(weight);
+        slot.sum.add(responseTime * weight);
+        slot.histogram.record(responseTime, weight);
+        long max = slot.max.get();
+        while (responseTime > max && !slot.max.compareAndSet(max, responseTime)) {
+            max = slot.max.get();
+        }
+    }
+
+    /**
+     * 合并最近windowSeconds个完整秒(不含当前秒)的统计
+     * @param nowMillis
+     * @param windowSeconds
+     * @return
+     */
+    public LatencySnapshot snapshot(long nowMillis, int windowSeconds) {
+        return snapshot(nowMillis / 1000 - windowSeconds, nowMillis / 1000);
+    }
+
+    //合并[fromSecond, toSecond)内的统计
+    public LatencySnapshot snapshot(long fromSecond, long toSecond) {
+        if (toSecond - fromSecond > MAX_WINDOW_SECONDS) {
+            throw new IllegalArgumentException("Window must not exceed " + MAX_WINDOW_SECONDS + " seconds");
+        }
+        LatencySnapshot snapshot = new LatencySnapshot();
+        for (Slot slot : slots) {
+            long second = slot.second.get();
+            if (second >= fromSecond && second < toSecond) {
+                snapshot.add(slot.count.sum(), slot.sum.sum(), slot.max.get(), slot.histogram);
+            }
+        }
+        return snapshot;
+    }
+
+    private Slot slotOf(long second) {
+        Slot slot = slots[(int) (second % SLOT_COUNT)];
+        for (;;) {
+            long current = slot.second.get();
+            if (current == second) {
+                return slot;
+            }
+            if (current > second) {
+                return null;
+            }
+            if (current != RESETTING && slot.second.compareAndSet(current, RESETTING)) {
+                slot.reset();
+                slot.second.set(second);
+                return slot;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    private static class Slot {
+        private final AtomicLong second = new AtomicLong(0);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final AtomicLong max = new AtomicLong(0);
+        private final LatencyHistogram histogram = new LatencyHistogram();
+
+        void reset() {
+            count.reset();
+            sum.reset();
+            max.set(0);
+            histogram.reset();
+        }
+    }
+}
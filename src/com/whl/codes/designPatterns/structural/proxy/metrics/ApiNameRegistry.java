@@ -0,0 +1,62 @@
+package com.whl.codes.designPatterns.structural.proxy.metrics;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @author whl
+ * @version V1.0
+ * @Title: 接口名注册表(单例)
+ * @Description: 把接口名一次性映射为从0开始的连续int id, 记录请求时只传递id, 不再需要拼接或查找字符串。
+ * id在整个进程内唯一且不会回收, 可以长期缓存。
+ */
+public class ApiNameRegistry {
+    private static final ApiNameRegistry instance = new ApiNameRegistry();
+
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] names = new String[16];
+    private int size;
+
+    private ApiNameRegistry() {
+    }
+
+    public static ApiNameRegistry getInstance() {
+        return instance;
+    }
+
+    public int register(String apiName) {
+        Integer id = ids.get(apiName);
+        if (id != null) {
+            return id;
+        }
+        synchronized (this) {
+            id = ids.get(apiName);
+            if (id != null) {
+                return id;
+            }
+            String[] current = names;
+            if (size == current.length) {
+                current = Arrays.copyOf(current, size * 2);
+            }
+            current[size] = apiName;
+            names = current;
+            ids.put(apiName, size);
+            return size++;
+        }
+    }
+
+    /**
+     * 只查询不注册, 用于只读的统计查询
+     * @param apiName
+     * @return 未注册过时返回-1
+     */
+    public int getId(String apiName) {
+        Integer id = ids.get(apiName);
+        return id != null ? id : -1;
+    }
+
+    public String getApiName(int apiId) {
+        String[] current = names;
+        return apiId >= 0 && apiId < current.length ? current[apiId] : null;
+    }
+}
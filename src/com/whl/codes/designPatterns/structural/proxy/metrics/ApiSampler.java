@@ -0,0 +1,66 @@
+package com.whl.codes.designPatterns.structural.proxy.metrics;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author whl
+ * @version V1.0
+ * @Title: 单个接口的采样器
+ * @Description: 按SamplingPolicy决定一次请求是否记录以及记录的权重。
+ * 自适应模式下每秒由一个线程(CAS抢到的线程)根据请求量的指数移动平均重新计算采样率。
+ */
+public class ApiSampler {
+    private final SamplingPolicy policy;
+    private volatile int rate;
+
+    //以下字段只在自适应模式下使用
+    private final LongAdder seen = new LongAdder();
+    //-1表示还没有请求, 第一次请求所在的秒作为第一个统计周期的开始
+    private final AtomicLong currentSecond = new AtomicLong(-1);
+    private double averagePerSecond;
+
+    public ApiSampler(SamplingPolicy policy) {
+        this.policy = policy;
+        this.rate = policy.getRate();
+    }
+
+    /**
+     * @param timestamp 请求开始时间, 毫秒
+     * @param responseTimeNanos
+     * @return 记录的权重, 0表示不记录
+     */
+    public int sample(long timestamp, long responseTimeNanos) {
+        if (policy.isAdaptive()) {
+            seen.increment();
+            long second = timestamp / 1000;
+            long current = currentSecond.get();
+            if (current < 0) {
+                currentSecond.compareAndSet(current, second);
+            } else if (second > current && currentSecond.compareAndSet(current, second)) {
+                adjust(second - current);
+            }
+        }
+        if (responseTimeNanos >= policy.getSlowThresholdNanos()) {
+            return 1;
+        }
+        int n = rate;
+        if (n <= 1) {
+            return 1;
+        }
+        return ThreadLocalRandom.current().nextInt(n) == 0 ? n : 0;
+    }
+
+    public int getRate() {
+        return rate;
+    }
+
+    //只有CAS成功的线程进入, 不需要额外加锁
+    private void adjust(long elapsedSeconds) {
+        double perSecond = (double) seen.sumThenReset() / Math.max(1, elapsedSeconds);
+        averagePerSecond = averagePerSecond == 0 ? perSecond : averagePerSecond * 0.5 + perSecond * 0.5;
+        rate = (int) Math.max(1, Math.min(Integer.MAX_VALUE,
+                Math.ceil(averagePerSecond / policy.getTargetEventsPerSecond())));
+    }
+}
@@ -0,0 +1,86 @@
+package com.whl.codes.designPatterns.structural.proxy.metrics;
+
+import com.whl.codes.metrics.LatencySnapshot;
+
+/**
+ * @author whl
+ * @version V1.0
+ * @Title: 接口统计信息
+ * @Description: 耗时单位均为微秒
+ */
+public class ApiStat {
+    private final String apiName;
+    private final long count;
+    private final double tps;
+    private final long avgResponseTime;
+    private final long maxResponseTime;
+    private final long p50ResponseTime;
+    private final long p99ResponseTime;
+    private final long p999ResponseTime;
+
+    public ApiStat(String apiName, long count, double tps, long avgResponseTime, long maxResponseTime,
+                   long p50ResponseTime, long p99ResponseTime, long p999ResponseTime) {
+        this.apiName = apiName;
+        this.count = count;
+        this.tps = tps;
+        this.avgResponseTime = avgResponseTime;
+        this.maxResponseTime = maxResponseTime;
+        this.p50ResponseTime = p50ResponseTime;
+        this.p99ResponseTime = p99ResponseTime;
+        this.p999ResponseTime = p999ResponseTime;
+    }
+
+    /**
+     * 由一段时间内的延迟快照计算统计信息
+     * @param apiName
+     * @param snapshot
+     * @param durationMillis 快照覆盖的时长, 用于计算tps
+     * @return
+     */
+    public static ApiStat of(String apiName, LatencySnapshot snapshot, long durationMillis) {
+        long count = snapshot.getCount();
+        return new ApiStat(apiName, count, durationMillis <= 0 ? 0 : count * 1000.0 / durationMillis,
+                count == 0 ? 0 : snapshot.getSum() / count, snapshot.getMax(),
+                snapshot.getPercentile(50), snapshot.getPercentile(99), snapshot.getPercentile(99.9));
+    }
+
+    public String getApiName() {
+        return apiName;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getTps() {
+        return tps;
+    }
+
+    public long getAvgResponseTime() {
+        return avgResponseTime;
+    }
+
+    public long getMaxResponseTime() {
+        return maxResponseTime;
+    }
+
+    public long getP50ResponseTime() {
+        return p50ResponseTime;
+    }
+
+    public long getP99ResponseTime() {
+        return p99ResponseTime;
+    }
+
+    public long getP999ResponseTime() {
+        return p999ResponseTime;
+    }
+
+    @Override
+    public String toString() {
+        return apiName + "{count=" + count + ", tps=" + String.format("%.2f", tps)
+                + ", avg=" + avgResponseTime + "us, max=" + maxResponseTime
+                + "us, p50=" + p50ResponseTime + "us, p99=" + p99ResponseTime
+                + "us, p999=" + p999ResponseTime + "us}";
+    }
+}
@@ -0,0 +1,255 @@
+package com.whl.codes.designPatterns.structural.proxy.metrics;
+
+import com.whl.codes.metrics.LatencyHistogram;
+import com.whl.codes.metrics.LatencySnapshot;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URLEncoder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @author whl
+ * @version V1.0
+ * @Title: 基于内存映射文件的列式统计存储
+ * @Description: 每个接口一个目录, 每个段文件保存连续SEGMENT_ROWS个间隔的聚合结果, 文件名为段的开始时间。
+ * 段内按列存放: count列、sum列、max列, 然后直方图的每个桶各占一列, 第i行对应段内第i个间隔。
+ * 同一个间隔多次保存时累加, 因此写入的粒度可以比间隔更细。查询时只读取时间范围内的行, 按列顺序合并, 不扫描原始请求。
+ * 写入与过期清理由单个线程(MetricsCollector的刷盘线程)完成, 每经过一个段的时长清理一次所有接口的过期段文件;
+ * 没有写入的页不会占用磁盘空间。不再使用时调用close(), 把映射的内容写回文件并释放对映射的引用。
+ */
+public class FileMetricsStorage implements MetricsStorage, AutoCloseable {
+    private static final long MAGIC = 0x4D455452_49435321L;
+    private static final int HEADER_SIZE = 32;
+    private static final int SEGMENT_ROWS = 360;
+    //count + sum + max + 直方图各桶
+    private static final int COLUMN_COUNT = 3 + LatencyHistogram.BUCKET_COUNT;
+    private static final int COLUMN_SIZE = SEGMENT_ROWS * Long.BYTES;
+    private static final int SEGMENT_SIZE = HEADER_SIZE + COLUMN_COUNT * COLUMN_SIZE;
+    private static final int COUNT_COLUMN = 0;
+    private static final int SUM_COLUMN = 1;
+    private static final int MAX_COLUMN = 2;
+    private static final int BUCKET_COLUMN = 3;
+    private static final String FILE_SUFFIX = ".seg";
+
+    private final Path directory;
+    private final long intervalMillis;
+    private final long segmentMillis;
+    private final long retentionMillis;
+    private final Map<Path, MappedByteBuffer> segments = new ConcurrentHashMap<>();
+    //下一次清理过期段的时间, 只在刷盘线程中访问
+    private long nextPurgeMillis;
+    private volatile boolean closed;
+
+    public FileMetricsStorage(Path directory, long intervalMillis, long retentionMillis) {
+        if (intervalMillis <= 0 || retentionMillis <= 0) {
+            throw new IllegalArgumentException("intervalMillis and retentionMillis must be positive");
+        }
+        this.directory = directory;
+        this.intervalMillis = intervalMillis;
+        this.segmentMillis = intervalMillis * SEGMENT_ROWS;
+        this.retentionMillis = retentionMillis;
+    }
+
+    @Override
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    @Override
+    public void saveAggregate(String apiName, long intervalStart, LatencySnapshot aggregate) {
+        long segmentStart = Math.floorDiv(intervalStart, segmentMillis) * segmentMillis;
+        MappedByteBuffer segment = segment(apiName, segmentStart, true);
+        int row = (int) ((intervalStart - segmentStart) / intervalMillis);
+        long[] buckets = aggregate.getBuckets();
+        for (int i = 0; i < buckets.length; i++) {
+            if (buckets[i] != 0) {
+                addLong(segment, offset(BUCKET_COLUMN + i, row), buckets[i]);
+            }
+        }
+        addLong(segment, offset(SUM_COLUMN, row), aggregate.getSum());
+        int maxOffset = offset(MAX_COLUMN, row);
+        segment.putLong(maxOffset, Math.max(segment.getLong(maxOffset), aggregate.getMax()));
+        //count最后写入, count为0的行在查询时跳过
+        addLong(segment, offset(COUNT_COLUMN, row), aggregate.getCount());
+    }
+
+    @Override
+    public LatencySnapshot getAggregate(String apiName, long fromTs, long toTs) {
+        LatencySnapshot result = new LatencySnapshot();
+        long segmentStart = Math.floorDiv(fromTs, segmentMillis) * segmentMillis;
+        for (; segmentStart < toTs; segmentStart += segmentMillis) {
+            MappedByteBuffer segment = segment(apiName, segmentStart, false);
+            if (segment == null) {
+                continue;
+            }
+            //段内落在[fromTs, toTs)中的行, 行的开始时间在范围内即算在内
+            int fromRow = (int) Math.max(0, ceilDiv(fromTs - segmentStart, intervalMillis));
+            int toRow = (int) Math.min(SEGMENT_ROWS, ceilDiv(toTs - segmentStart, intervalMillis));
+            mergeRows(segment, fromRow, toRow, result);
+        }
+        return result;
+    }
+
+    private void mergeRows(MappedByteBuffer segment, int fromRow, int toRow, LatencySnapshot result) {
+        long count = 0;
+        long sum = 0;
+        long max = 0;
+        long[] buckets = new long[LatencyHistogram.BUCKET_COUNT];
+        boolean empty = true;
+        for (int row = fromRow; row < toRow; row++) {
+            long rowCount = segment.getLong(offset(COUNT_COLUMN, row));
+            if (rowCount != 0) {
+                empty = false;
+                count += rowCount;
+                sum += segment.getLong(offset(SUM_COLUMN, row));
+                max = Math.max(max, segment.getLong(offset(MAX_COLUMN, row)));
+            }
+        }
+        if (empty) {
+            return;
+        }
+        for (int bucket = 0; bucket < buckets.length; bucket++) {
+            int column = BUCKET_COLUMN + bucket;
+            for (int row = fromRow; row < toRow; row++) {
+                buckets[bucket] += segment.getLong(offset(column, row));
+            }
+        }
+        result.add(count, sum, max, buckets);
+    }
+
+    private MappedByteBuffer segment(String apiName, long segmentStart, boolean create) {
+        Path file = apiDirectory(apiName).resolve(segmentStart + FILE_SUFFIX);
+        MappedByteBuffer segment = segments.get(file);
+        if (segment != null) {
+            return segment;
+        }
+        if (!create && !Files.exists(file)) {
+            return null;
+        }
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("Metrics storage is closed: " + directory);
+            }
+            segment = segments.get(file);
+            if (segment == null) {
+                boolean exists = Files.exists(file);
+                segment = map(file, create);
+                if (segment == null) {
+                    //查询时文件刚好被过期清理删除
+                    return null;
+                }
+                if (!exists) {
+                    segment.putLong(8, intervalMillis);
+                    segment.putLong(16, segmentStart);
+                    segment.putLong(0, MAGIC);
+                } else if (segment.getLong(0) != MAGIC || segment.getLong(8) != intervalMillis) {
+                    throw new IllegalStateException("Incompatible metrics segment " + file);
+                }
+                segments.put(file, segment);
+            }
+            return segment;
+        }
+    }
+
+    /**
+     * 删除所有接口中结束时间早于 now - 保留时长 的段文件, 距离上次清理不足一个段的时长时直接返回
+     * @param now 毫秒
+     */
+    @Override
+    public void purgeExpired(long now) {
+        if (now < nextPurgeMillis || !Files.isDirectory(directory)) {
+            return;
+        }
+        try (DirectoryStream<Path> apiDirectories = Files.newDirectoryStream(directory, Files::isDirectory)) {
+            for (Path apiDirectory : apiDirectories) {
+                purgeExpired(apiDirectory, now - retentionMillis);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot purge metrics in " + directory, e);
+        }
+        nextPurgeMillis = now + segmentMillis;
+    }
+
+    /**
+     * 把映射的内容写回文件, 并释放对所有段的引用; 映射本身在缓冲区被回收时解除
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        for (MappedByteBuffer segment : segments.values()) {
+            segment.force();
+        }
+        segments.clear();
+    }
+
+    private void purgeExpired(Path apiDirectory, long expireBefore) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(apiDirectory, "*" + FILE_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                long segmentStart;
+                try {
+                    segmentStart = Long.parseLong(name.substring(0, name.length() - FILE_SUFFIX.length()));
+                } catch (NumberFormatException e) {
+                    //不是本类写入的文件
+                    continue;
+                }
+                if (segmentStart + segmentMillis <= expireBefore) {
+                    //与segment()中的映射互斥, 查询线程不会缓存一个已删除的段
+                    synchronized (this) {
+                        segments.remove(file);
+                        Files.deleteIfExists(file);
+                    }
+                }
+            }
+        }
+    }
+
+    //create为false时不创建文件, 文件不存在时返回null
+    private MappedByteBuffer map(Path file, boolean create) {
+        try {
+            if (create) {
+                Files.createDirectories(file.getParent());
+            }
+            OpenOption[] options = create
+                    ? new OpenOption[]{StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE}
+                    : new OpenOption[]{StandardOpenOption.READ, StandardOpenOption.WRITE};
+            try (FileChannel channel = FileChannel.open(file, options)) {
+                return channel.map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_SIZE);
+            }
+        } catch (NoSuchFileException e) {
+            if (create) {
+                throw new UncheckedIOException("Cannot map metrics segment " + file, e);
+            }
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot map metrics segment " + file, e);
+        }
+    }
+
+    private Path apiDirectory(String apiName) {
+        return directory.resolve(URLEncoder.encode(apiName, StandardCharsets.UTF_8));
+    }
+
+    private static void addLong(MappedByteBuffer segment, int offset, long value) {
+        segment.putLong(offset, segment.getLong(offset) + value);
+    }
+
+    private static int offset(int column, int row) {
+        return HEADER_SIZE + column * COLUMN_SIZE + row * Long.BYTES;
+    }
+
+    private static long ceilDiv(long x, long y) {
+        return -Math.floorDiv(-x, y);
+    }
+}
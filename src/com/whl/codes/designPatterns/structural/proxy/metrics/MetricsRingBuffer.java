@@ -0,0 +1,110 @@
+package com.whl.codes.designPatterns.structural.proxy.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author whl
+ * @version V1.0
+ * @Title: 有界多生产者单消费者环形队列
+ * @Description: 事件的各个字段分别存放在预分配的数组中, 发布事件不产生任何对象。
+ * 每个槽位有一个序号: 序号等于生产位置时可写, 等于生产位置+1时可读, 生产者之间只竞争一次tail的CAS。
+ * 队列满时直接丢弃并计数, 生产者永远不会被阻塞。
+ */
+public class MetricsRingBuffer {
+    private final int capacity;
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final int[] apiIds;
+    private final long[] startTimestamps;
+    private final long[] responseTimes;
+    private final int[] weights;
+
+    private final AtomicLong tail = new AtomicLong(0);
+    //只有消费者线程访问
+    private long head = 0;
+    private final LongAdder dropped = new LongAdder();
+
+    public interface EventHandler {
+        void onEvent(int apiId, long startTimestamp, long responseTime, int weight);
+    }
+
+    public MetricsRingBuffer(int capacity) {
+        if (capacity <= 1 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of two: " + capacity);
+        }
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+        this.apiIds = new int[capacity];
+        this.startTimestamps = new long[capacity];
+        this.responseTimes = new long[capacity];
+        this.weights = new int[capacity];
+    }
+
+    /**
+     * 发布一个事件, 队列满时丢弃
+     * @return 是否发布成功
+     */
+    public boolean offer(int apiId, long startTimestamp, long responseTime, int weight) {
+        long position = tail.get();
+        for (;;) {
+            int index = (int) (position & mask);
+            long sequence = sequences.get(index);
+            if (sequence == position) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    apiIds[index] = apiId;
+                    startTimestamps[index] = startTimestamp;
+                    responseTimes[index] = responseTime;
+                    weights[index] = weight;
+                    //发布: 序号的写入对消费者可见之后, 上面的字段也可见
+                    sequences.lazySet(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (sequence < position) {
+                dropped.increment();
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * 批量消费, 只能由同一个消费者线程调用
+     * @param handler
+     * @param maxBatch
+     * @return 本次消费的事件个数
+     */
+    public int drain(EventHandler handler, int maxBatch) {
+        int drained = 0;
+        while (drained < maxBatch) {
+            int index = (int) (head & mask);
+            if (sequences.get(index) != head + 1) {
+                break;
+            }
+            int apiId = apiIds[index];
+            long startTimestamp = startTimestamps[index];
+            long responseTime = responseTimes[index];
+            int weight = weights[index];
+            sequences.lazySet(index, head + capacity);
+            head++;
+            drained++;
+            handler.onEvent(apiId, startTimestamp, responseTime, weight);
+        }
+        return drained;
+    }
+
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+}
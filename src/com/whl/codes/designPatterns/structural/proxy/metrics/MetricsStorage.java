@@ -0,0 +1,41 @@
+package com.whl.codes.designPatterns.structural.proxy.metrics;
+
+import com.whl.codes.metrics.LatencySnapshot;
+
+/**
+ * @author whl
+ * @version V1.0
+ * @Title: 统计数据存储
+ * @Description: 按接口、按时间间隔保存预聚合好的统计数据, 查询时合并时间范围内的聚合结果, 不需要原始请求数据
+ */
+public interface MetricsStorage {
+    /**
+     * 把聚合结果累加到intervalStart所在的时间间隔
+     * @param apiName
+     * @param intervalStart 聚合结果的开始时间, 毫秒
+     * @param aggregate
+     */
+    void saveAggregate(String apiName, long intervalStart, LatencySnapshot aggregate);
+
+    /**
+     * 合并[fromTs, toTs)内所有间隔的聚合结果
+     * @param apiName
+     * @param fromTs 毫秒
+     * @param toTs 毫秒
+     * @return
+     */
+    LatencySnapshot getAggregate(String apiName, long fromTs, long toTs);
+
+    /**
+     * 存储的时间间隔, 毫秒。一次保存的聚合结果只能落在一个间隔内, 因此刷盘间隔必须能整除它
+     * @return
+     */
+    long getIntervalMillis();
+
+    /**
+     * 删除所有接口中超过保留时长的数据, 由刷盘线程定期调用
+     * @param now 毫秒
+     */
+    default void purgeExpired(long now) {
+    }
+}
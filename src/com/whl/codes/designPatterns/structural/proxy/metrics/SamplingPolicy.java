@@ -0,0 +1,65 @@
+package com.whl.codes.designPatterns.structural.proxy.metrics;
+
+/**
+ * @author whl
+ * @version V1.0
+ * @Title: 采样策略
+ * @Description: 耗时不低于slowThresholdNanos的慢请求总是被记录; 其余请求按1/N的概率记录, 并以权重N计入统计,
+ * 因此次数、TPS、平均值与百分位的估计是无偏的。N可以固定, 也可以根据每秒请求量自动调整, 使记录的事件数接近目标值。
+ */
+public class SamplingPolicy {
+    private final int rate;
+    private final long targetEventsPerSecond;
+    private final long slowThresholdNanos;
+
+    private SamplingPolicy(int rate, long targetEventsPerSecond, long slowThresholdNanos) {
+        if (slowThresholdNanos < 0) {
+            throw new IllegalArgumentException("slowThresholdNanos must not be negative: " + slowThresholdNanos);
+        }
+        this.rate = rate;
+        this.targetEventsPerSecond = targetEventsPerSecond;
+        this.slowThresholdNanos = slowThresholdNanos;
+    }
+
+    /**
+     * 固定采样: 每oneInN个普通请求记录一个
+     * @param oneInN
+     * @param slowThresholdNanos
+     * @return
+     */
+    public static SamplingPolicy fixedRate(int oneInN, long slowThresholdNanos) {
+        if (oneInN <= 0) {
+            throw new IllegalArgumentException("oneInN must be positive: " + oneInN);
+        }
+        return new SamplingPolicy(oneInN, 0, slowThresholdNanos);
+    }
+
+    /**
+     * 自适应采样: 根据上一秒的请求量调整采样率, 使每秒记录的普通请求数接近targetEventsPerSecond
+     * @param targetEventsPerSecond
+     * @param slowThresholdNanos
+     * @return
+     */
+    public static SamplingPolicy adaptive(long targetEventsPerSecond, long slowThresholdNanos) {
+        if (targetEventsPerSecond <= 0) {
+            throw new IllegalArgumentException("targetEventsPerSecond must be positive: " + targetEventsPerSecond);
+        }
+        return new SamplingPolicy(1, targetEventsPerSecond, slowThresholdNanos);
+    }
+
+    public int getRate() {
+        return rate;
+    }
+
+    public boolean isAdaptive() {
+        return targetEventsPerSecond > 0;
+    }
+
+    public long getTargetEventsPerSecond() {
+        return targetEventsPerSecond;
+    }
+
+    public long getSlowThresholdNanos() {
+        return slowThresholdNanos;
+    }
+}
@@ -0,0 +1,44 @@
+package com.whl.codes.designPatterns.structural.proxy.reporter;
+
+import com.whl.codes.designPatterns.structural.proxy.metrics.ApiStat;
+
+import java.io.PrintStream;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * @author whl
+ * @version V1.0
+ * @Title: 输出到控制台
+ * @Description: 耗时单位为微秒
+ */
+public class ConsoleReporter implements MetricsReporter {
+    private final PrintStream out;
+
+    public ConsoleReporter() {
+        this(System.out);
+    }
+
+    public ConsoleReporter(PrintStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void report(Map<String, ApiStat> stats, long startTimestamp, long endTimestamp) {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        StringBuilder builder = new StringBuilder();
+        builder.append("=== ").append(format.format(new Date(startTimestamp)))
+                .append(" ~ ").append(format.format(new Date(endTimestamp))).append(" ===\n");
+        builder.append(String.format("%-40s %10s %10s %10s %10s %10s %10s %10s%n",
+                "api", "count", "tps", "avg", "p50", "p99", "p999", "max"));
+        for (ApiStat stat : stats.values()) {
+            builder.append(String.format("%-40s %10d %10.2f %10d %10d %10d %10d %10d%n",
+                    stat.getApiName(), stat.getCount(), stat.getTps(), stat.getAvgResponseTime(),
+                    stat.getP50ResponseTime(), stat.getP99ResponseTime(), stat.getP999ResponseTime(),
+                    stat.getMaxResponseTime()));
+        }
+        out.print(builder);
+        out.flush();
+    }
+}
@@ -0,0 +1,107 @@
+package com.whl.codes.designPatterns.structural.proxy.reporter;
+
+import com.whl.codes.designPatterns.structural.proxy.metrics.ApiStat;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * @author whl
+ * @version V1.0
+ * @Title: 输出到按天滚动的JSON文件
+ * @Description: 每个接口每次输出一行JSON, 文件名为 prefix-yyyy-MM-dd.json, 只保留最近maxHistoryDays天的文件
+ */
+public class JsonFileReporter implements MetricsReporter {
+    private static final String FILE_SUFFIX = ".json";
+
+    private final Path directory;
+    private final String prefix;
+    private final int maxHistoryDays;
+    private final ZoneId zone = ZoneId.systemDefault();
+    private LocalDate currentDate;
+
+    public JsonFileReporter(Path directory, String prefix, int maxHistoryDays) {
+        if (maxHistoryDays <= 0) {
+            throw new IllegalArgumentException("maxHistoryDays must be positive: " + maxHistoryDays);
+        }
+        this.directory = directory;
+        this.prefix = prefix;
+        this.maxHistoryDays = maxHistoryDays;
+    }
+
+    @Override
+    public synchronized void report(Map<String, ApiStat> stats, long startTimestamp, long endTimestamp) {
+        LocalDate date = Instant.ofEpochMilli(endTimestamp).atZone(zone).toLocalDate();
+        Path file = directory.resolve(prefix + "-" + date + FILE_SUFFIX);
+        try {
+            if (!date.equals(currentDate)) {
+                Files.createDirectories(directory);
+                currentDate = date;
+                purgeHistory(file);
+            }
+            try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                for (ApiStat stat : stats.values()) {
+                    writer.write(toJson(stat, startTimestamp, endTimestamp));
+                    writer.write('\n');
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write metrics to " + file, e);
+        }
+    }
+
+    //按文件名(日期)排序, 删除超出保留天数的文件
+    private void purgeHistory(Path currentFile) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, prefix + "-*" + FILE_SUFFIX)) {
+            for (Path file : stream) {
+                //当天的文件不论是否已经存在(例如重启后)都不计入历史, 只保留它之前的maxHistoryDays - 1个文件
+                if (!file.equals(currentFile)) {
+                    files.add(file);
+                }
+            }
+        }
+        Collections.sort(files);
+        for (int i = 0; i < files.size() - (maxHistoryDays - 1); i++) {
+            Files.deleteIfExists(files.get(i));
+        }
+    }
+
+    private static String toJson(ApiStat stat, long startTimestamp, long endTimestamp) {
+        return String.format(Locale.ROOT, "{\"api\":\"%s\",\"start\":%d,\"end\":%d,\"count\":%d,\"tps\":%.2f,"
+                        + "\"avg\":%d,\"p50\":%d,\"p99\":%d,\"p999\":%d,\"max\":%d}",
+                escape(stat.getApiName()), startTimestamp, endTimestamp, stat.getCount(), stat.getTps(),
+                stat.getAvgResponseTime(), stat.getP50ResponseTime(), stat.getP99ResponseTime(),
+                stat.getP999ResponseTime(), stat.getMaxResponseTime());
+    }
+
+    private static String escape(String value) {
+        StringBuilder builder = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                builder.append('\\').append(c);
+            } else if (c < 0x20) {
+                builder.append(String.format("\\u%04x", (int) c));
+            } else {
+                builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+}
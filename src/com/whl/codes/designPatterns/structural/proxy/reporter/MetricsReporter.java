@@ -0,0 +1,20 @@
+package com.whl.codes.designPatterns.structural.proxy.reporter;
+
+import com.whl.codes.designPatterns.structural.proxy.metrics.ApiStat;
+
+import java.util.Map;
+
+/**
+ * @author whl
+ * @version V1.0
+ * @Title: 统计数据输出
+ * @Description: 自定义输出(如推送到监控系统)只需要实现该接口并注册到ScheduledReporter
+ */
+public interface MetricsReporter {
+    /**
+     * @param stats 接口名 -> [startTimestamp, endTimestamp)内的统计信息
+     * @param startTimestamp 毫秒
+     * @param endTimestamp 毫秒
+     */
+    void report(Map<String, ApiStat> stats, long startTimestamp, long endTimestamp);
+}
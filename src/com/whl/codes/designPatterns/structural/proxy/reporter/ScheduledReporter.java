@@ -0,0 +1,88 @@
+package com.whl.codes.designPatterns.structural.proxy.reporter;
+
+import com.whl.codes.designPatterns.structural.proxy.MetricsCollector;
+import com.whl.codes.designPatterns.structural.proxy.RequestInfo;
+import com.whl.codes.designPatterns.structural.proxy.metrics.ApiMetrics;
+import com.whl.codes.designPatterns.structural.proxy.metrics.ApiStat;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author whl
+ * @version V1.0
+ * @Title: 定时输出统计数据
+ * @Description: 所有MetricsReporter共用一个线程。周期相同的reporter共用一次统计计算,
+ * 统计直接合并MetricsCollector中按秒预聚合好的窗口, 开销只与周期长度和接口数有关, 与请求量无关。
+ */
+public class ScheduledReporter {
+    private final MetricsCollector metricsCollector;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "metrics-reporter");
+        t.setDaemon(true);
+        return t;
+    });
+    //周期(秒) -> 该周期的reporter
+    private final Map<Integer, List<MetricsReporter>> reporters = new ConcurrentHashMap<>();
+
+    public ScheduledReporter(MetricsCollector metricsCollector) {
+        this.metricsCollector = metricsCollector;
+    }
+
+    /**
+     * 注册reporter, 每隔periodSeconds秒输出最近periodSeconds秒的统计
+     * @param reporter
+     * @param periodSeconds 不超过60秒
+     */
+    public void addReporter(MetricsReporter reporter, int periodSeconds) {
+        if (periodSeconds <= 0 || periodSeconds > ApiMetrics.MAX_WINDOW_SECONDS) {
+            throw new IllegalArgumentException("periodSeconds must be in (0, "
+                    + ApiMetrics.MAX_WINDOW_SECONDS + "]: " + periodSeconds);
+        }
+        reporters.computeIfAbsent(periodSeconds, period -> {
+            List<MetricsReporter> group = new CopyOnWriteArrayList<>();
+            executor.scheduleAtFixedRate(() -> report(period, group), period, period, TimeUnit.SECONDS);
+            return group;
+        }).add(reporter);
+    }
+
+    public void stop() {
+        executor.shutdown();
+    }
+
+    private void report(int periodSeconds, List<MetricsReporter> group) {
+        long endTimestamp = System.currentTimeMillis() / 1000 * 1000;
+        Map<String, ApiStat> stats;
+        try {
+            stats = metricsCollector.getStats(periodSeconds);
+        } catch (RuntimeException e) {
+            //异常抛出后定时任务会被取消, 跳过本周期即可
+            System.err.println("Metrics collection for " + periodSeconds + "s reporters failed: " + e);
+            return;
+        }
+        for (MetricsReporter reporter : group) {
+            try {
+                reporter.report(stats, endTimestamp - periodSeconds * 1000L, endTimestamp);
+            } catch (RuntimeException e) {
+                //一个reporter出错不影响其它reporter, 也不能让定时任务终止
+                System.err.println("Metrics reporter " + reporter.getClass().getName() + " failed: " + e);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        MetricsCollector metricsCollector = new MetricsCollector();
+        ScheduledReporter scheduledReporter = new ScheduledReporter(metricsCollector);
+        scheduledReporter.addReporter(new ConsoleReporter(), 2);
+        for (int i = 0; i < 50; i++) {
+            metricsCollector.recordRequest(new RequestInfo("login", System.currentTimeMillis(), i % 10));
+            Thread.sleep(100);
+        }
+        scheduledReporter.stop();
+    }
+}
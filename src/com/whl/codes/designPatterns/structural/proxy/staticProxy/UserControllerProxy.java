@@ -1,6 +1,7 @@
 package com.whl.codes.designPatterns.structural.proxy.staticProxy;
 
 import com.whl.codes.designPatterns.structural.proxy.*;
+import com.whl.codes.designPatterns.structural.proxy.metrics.ApiNameRegistry;
 
 /**
  * @author whl
@@ -9,31 +10,39 @@ import com.whl.codes.designPatterns.structural.proxy.*;
  * @Description:
  */
 public class UserControllerProxy implements IUserController {
+    private static final int LOGIN_API_ID = ApiNameRegistry.getInstance().register("login");
+    private static final int REGISTER_API_ID = ApiNameRegistry.getInstance().register("register");
+
     private MetricsCollector metricsCollector;
     private UserController userController;
 
     public UserControllerProxy(UserController userController) {
-        this.metricsCollector = new MetricsCollector();
+        this(userController, new MetricsCollector());
+    }
+
+    //可以传入AsyncMetricsCollector, 统计不占用请求线程
+    public UserControllerProxy(UserController userController, MetricsCollector metricsCollector) {
+        this.metricsCollector = metricsCollector;
         this.userController = userController;
     }
 
     @Override
     public UserVo login(String telephone, String password) {
         long startTimestamp = System.currentTimeMillis();
+        long startNanos = System.nanoTime();
         UserVo userVo = userController.login(telephone, password);
-        long endTimeStamp = System.currentTimeMillis();
-        long responseTime = endTimeStamp - startTimestamp;
-        metricsCollector.recordRequest(new RequestInfo("login", responseTime, startTimestamp));
+        long responseTime = System.nanoTime() - startNanos;
+        metricsCollector.recordRequest(LOGIN_API_ID, startTimestamp, responseTime);
         return userVo;
     }
 
     @Override
     public UserVo register(String telephone, String password) {
         long startTimestamp = System.currentTimeMillis();
+        long startNanos = System.nanoTime();
         UserVo userVo = userController.register(telephone, password);
-        long endTimeStamp = System.currentTimeMillis();
-        long responseTime = endTimeStamp - startTimestamp;
-        metricsCollector.recordRequest(new RequestInfo("register", responseTime, startTimestamp));
+        long responseTime = System.nanoTime() - startNanos;
+        metricsCollector.recordRequest(REGISTER_API_ID, startTimestamp, responseTime);
         return userVo;
     }
 
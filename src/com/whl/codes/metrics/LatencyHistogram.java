@@ -0,0 +1,73 @@
+package com.whl.codes.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * @author whl
+ * @version V1.0
+ * @Title: 对数分桶的延迟直方图
+ * @Description: 固定大小的无锁直方图, 单位为微秒。0~15微秒每个值一个桶,
+ * 之后每个2的幂区间再等分为8个子桶, 相对误差不超过12.5%, 上限约71分钟, 总共240个桶。
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    //小于该值的延迟精确记录
+    private static final int LINEAR_LIMIT = SUB_BUCKET_COUNT * 2;
+    private static final int MAX_EXPONENT = 31;
+    public static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+    public static final int BUCKET_COUNT = LINEAR_LIMIT + (MAX_EXPONENT - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+    public void record(long micros, long count) {
+        counts.getAndAdd(bucketIndex(micros), count);
+    }
+
+    public void addTo(long[] buckets) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            long count = counts.get(i);
+            if (count != 0) {
+                buckets[i] += count;
+            }
+        }
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+    }
+
+    public static int bucketIndex(long micros) {
+        if (micros < LINEAR_LIMIT) {
+            return micros < 0 ? 0 : (int) micros;
+        }
+        if (micros > MAX_VALUE) {
+            micros = MAX_VALUE;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+        return LINEAR_LIMIT + (exponent - SUB_BUCKET_BITS - 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    //桶中能记录的最大值
+    public static long highestValueOf(int index) {
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+        if (index >= BUCKET_COUNT - 1) {
+            return MAX_VALUE;
+        }
+        return lowestValueOf(index + 1) - 1;
+    }
+
+    public static long lowestValueOf(int index) {
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+        int exponent = (index - LINEAR_LIMIT) / SUB_BUCKET_COUNT + SUB_BUCKET_BITS + 1;
+        int subBucket = (index - LINEAR_LIMIT) % SUB_BUCKET_COUNT;
+        return (long) (SUB_BUCKET_COUNT + subBucket) << (exponent - SUB_BUCKET_BITS);
+    }
+}
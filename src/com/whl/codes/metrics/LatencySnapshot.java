@@ -0,0 +1,74 @@
+package com.whl.codes.metrics;
+
+/**
+ * @author whl
+ * @version V1.0
+ * @Title: 延迟统计快照
+ * @Description: 一段时间内的次数、总耗时、最大耗时与直方图, 可以相互合并, 单位为微秒
+ */
+public class LatencySnapshot {
+    private long count;
+    private long sum;
+    private long max;
+    private final long[] buckets = new long[LatencyHistogram.BUCKET_COUNT];
+
+    public void add(long count, long sum, long max, LatencyHistogram histogram) {
+        this.count += count;
+        this.sum += sum;
+        this.max = Math.max(this.max, max);
+        histogram.addTo(buckets);
+    }
+
+    public void add(long count, long sum, long max, long[] buckets) {
+        this.count += count;
+        this.sum += sum;
+        this.max = Math.max(this.max, max);
+        for (int i = 0; i < this.buckets.length; i++) {
+            this.buckets[i] += buckets[i];
+        }
+    }
+
+    public void merge(LatencySnapshot other) {
+        add(other.count, other.sum, other.max, other.buckets);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getSum() {
+        return sum;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public long[] getBuckets() {
+        return buckets;
+    }
+
+    /**
+     * 计算百分位值, 返回所在桶的上界(不超过最大值)
+     * @param percentile 0~100
+     * @return
+     */
+    public long getPercentile(double percentile) {
+        long total = 0;
+        for (long bucket : buckets) {
+            total += bucket;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (seen >= rank) {
+                return Math.min(LatencyHistogram.highestValueOf(i), max);
+            }
+        }
+        return max;
+    }
+}